@@ -1,5 +1,6 @@
 package com.hxzhitang.tongdarailway;
 
+import com.hxzhitang.tongdarailway.railway.planner.RoutePlanner;
 import net.neoforged.bus.api.SubscribeEvent;
 import net.neoforged.fml.common.EventBusSubscriber;
 import net.neoforged.fml.event.config.ModConfigEvent;
@@ -27,12 +28,82 @@ public class Config {
             .comment("Size of each railway region in chunks. Smaller values increase station density. (default: 128, min: 32, max: 256)")
             .defineInRange("chunkGroupSize", 128, 32, 256);
 
+    private static final ModConfigSpec.IntValue PLANNER_THREADS = BUILDER
+            .comment("Number of threads used for railway planning. 0 means CPU cores - 1. (default: 0, min: 0, max: 256)")
+            .defineInRange("plannerThreads", 0, 0, 256);
+
+    private static final ModConfigSpec.BooleanValue ENABLE_REGION_PREFETCH = BUILDER
+            .comment("Plan railway regions ahead of moving players before chunk generation reaches them")
+            .define("enableRegionPrefetch", true);
+
+    private static final ModConfigSpec.IntValue PREFETCH_LOOKAHEAD_SECONDS = BUILDER
+            .comment("How many seconds ahead of a moving player regions are prefetched. (default: 30, min: 0, max: 300)")
+            .defineInRange("prefetchLookaheadSeconds", 30, 0, 300);
+
+    private static final ModConfigSpec.IntValue MAX_CONCURRENT_REGION_PLANS = BUILDER
+            .comment("How many railway regions can be planned at the same time. Each region plan has its own thread that waits for the planner threads. 0 means the number of planner threads. (default: 0, min: 0, max: 256)")
+            .defineInRange("maxConcurrentRegionPlans", 0, 0, 256);
+
+    private static final ModConfigSpec.IntValue MAX_QUEUED_REGION_PLANS = BUILDER
+            .comment("How many prefetched railway regions can wait for planning. Further prefetches are dropped until the queue drains. (default: 64, min: 1, max: 4096)")
+            .defineInRange("maxQueuedRegionPlans", 64, 1, 4096);
+
+    private static final ModConfigSpec.DoubleValue PATH_SEARCH_EPSILON = BUILDER
+            .comment("Heuristic inflation of the route search. 1.0 finds the cheapest route, larger values search faster but the route may cost up to this factor more. (default: 1.0, min: 1.0, max: 10.0)")
+            .defineInRange("pathSearchEpsilon", 1.0, 1.0, 10.0);
+
+    private static final ModConfigSpec.BooleanValue PATH_SEARCH_ANYTIME = BUILDER
+            .comment("Start the route search with pathSearchEpsilon and keep improving the route towards the cheapest one until the search budget runs out")
+            .define("pathSearchAnytime", false);
+
+    private static final ModConfigSpec.IntValue PATH_SEARCH_MAX_EXPANSIONS = BUILDER
+            .comment("Maximum number of cells expanded while searching one route. 0 means no limit. (default: 0, min: 0, max: 100000000)")
+            .defineInRange("pathSearchMaxExpansions", 0, 0, 100_000_000);
+
+    private static final ModConfigSpec.IntValue PATH_SEARCH_MAX_MILLIS = BUILDER
+            .comment("Maximum time in milliseconds spent searching one route. When the budget runs out the best route found so far is used. 0 means no limit. (default: 0, min: 0, max: 600000)")
+            .defineInRange("pathSearchMaxMillis", 0, 0, 600_000);
+
+    private static final ModConfigSpec.EnumValue<RoutePlanner.SearchMode> PATH_SEARCH_MODE = BUILDER
+            .comment("How routes between stations are searched. DIRECT searches the whole planning window at full resolution, HIERARCHICAL first searches a graph of 32x32 cell clusters and then only refines inside the clusters on that route. COARSE_TO_FINE first searches a downsampled map and then only refines in a band around that route. BIDIRECTIONAL searches from both stations at once, alternating between the two sides, and always finds the cheapest route (pathSearchEpsilon and pathSearchAnytime are ignored). Use HIERARCHICAL with large chunkGroupSize values.")
+            .defineEnum("pathSearchMode", RoutePlanner.SearchMode.DIRECT);
+
+    private static final ModConfigSpec.IntValue PATH_SEARCH_LANDMARKS = BUILDER
+            .comment("Number of landmarks used to estimate route costs over hills (ALT heuristic). Each landmark costs one full search of the planning window when the window is built, and makes route searches expand far fewer cells. Worth it with several planner threads or HIERARCHICAL mode. 0 disables landmarks. (default: 0, min: 0, max: 8)")
+            .defineInRange("pathSearchLandmarks", 0, 0, 8);
+
+    private static final ModConfigSpec.IntValue PATH_SEARCH_COARSE_FACTOR = BUILDER
+            .comment("Downsampling factor of the first pass in COARSE_TO_FINE mode. With the default sampling of 2 cells per chunk, 4 means one coarse cell per 2x2 chunks. (default: 4, min: 2, max: 16)")
+            .defineInRange("pathSearchCoarseFactor", 4, 2, 16);
+
+    private static final ModConfigSpec.BooleanValue PARALLEL_CONNECTION_PLANNING = BUILDER
+            .comment("Plan the connections of a region in parallel on the planner threads. The planned routes are the same either way.")
+            .define("parallelConnectionPlanning", true);
+
+    private static final ModConfigSpec.IntValue REGION_CACHE_MEGABYTES = BUILDER
+            .comment("Memory budget in megabytes for cached region height maps, structure maps, cluster costs and railway plans. When it is exceeded, regions far from players that were not used recently are dropped and computed again (or read back from the save) when needed. (default: 256, min: 16, max: 65536)")
+            .defineInRange("regionCacheMegabytes", 256, 16, 65536);
+
     static final ModConfigSpec SPEC = BUILDER.build();
 
     public static boolean enableTrackSpawner;
     public static boolean generateTrackSpawner;
     public static boolean useTrackSpawnerPlaceTrack;
     public static int chunkGroupSize;
+    public static int plannerThreads;
+    public static boolean enableRegionPrefetch;
+    public static int prefetchLookaheadSeconds;
+    public static int maxConcurrentRegionPlans;
+    public static int maxQueuedRegionPlans;
+    public static double pathSearchEpsilon;
+    public static boolean pathSearchAnytime;
+    public static int pathSearchMaxExpansions;
+    public static int pathSearchMaxMillis;
+    public static RoutePlanner.SearchMode pathSearchMode;
+    public static int pathSearchLandmarks;
+    public static int pathSearchCoarseFactor;
+    public static boolean parallelConnectionPlanning;
+    public static int regionCacheMegabytes;
 
     @SubscribeEvent
     static void onLoad(final ModConfigEvent event) {
@@ -41,5 +112,19 @@ public class Config {
         useTrackSpawnerPlaceTrack = PLACE_TRACKS_USING_TRACK_SPAWNER.get();
         chunkGroupSize = CHUNK_GROUP_SIZE.get();
         Tongdarailway.CHUNK_GROUP_SIZE = chunkGroupSize;
+        plannerThreads = PLANNER_THREADS.get();
+        enableRegionPrefetch = ENABLE_REGION_PREFETCH.get();
+        prefetchLookaheadSeconds = PREFETCH_LOOKAHEAD_SECONDS.get();
+        maxConcurrentRegionPlans = MAX_CONCURRENT_REGION_PLANS.get();
+        maxQueuedRegionPlans = MAX_QUEUED_REGION_PLANS.get();
+        pathSearchEpsilon = PATH_SEARCH_EPSILON.get();
+        pathSearchAnytime = PATH_SEARCH_ANYTIME.get();
+        pathSearchMaxExpansions = PATH_SEARCH_MAX_EXPANSIONS.get();
+        pathSearchMaxMillis = PATH_SEARCH_MAX_MILLIS.get();
+        pathSearchMode = PATH_SEARCH_MODE.get();
+        pathSearchLandmarks = PATH_SEARCH_LANDMARKS.get();
+        pathSearchCoarseFactor = PATH_SEARCH_COARSE_FACTOR.get();
+        parallelConnectionPlanning = PARALLEL_CONNECTION_PLANNING.get();
+        regionCacheMegabytes = REGION_CACHE_MEGABYTES.get();
     }
 }
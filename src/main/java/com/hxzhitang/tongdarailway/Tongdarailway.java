@@ -21,18 +21,18 @@ import net.neoforged.neoforge.event.server.ServerStartingEvent;
 import org.slf4j.Logger;
 
 /*
- -4301944397657168414
+种子 -4301944397657168414
 -684 131 1547
-ȱ 558 78 1054
-ṹò: -1031 73 328 | -769 159 5503
-վ -1351 160 3034
+缺区块 558 78 1054
+结构避让测试: -1031 73 328 | -769 159 5503
+车站连接 -1351 160 3034
 -3568 76 3507
 
- 216126112278392742
+种子 216126112278392742
 -960 63 1424
-[x] Խ߶ȱʧ 1839 85 959
-[x] ƽ/δֱ 1341 76 884
-[-] ĳվ 621 64 3478
+[x] 对角线段缺失 1839 85 959
+[x] 调平不工作/错误的未升降的直线 1341 76 884
+[-] 不错的车站 621 64 3478
 
 -6630103939123469904
 -560 71 3184
@@ -52,9 +52,9 @@ public class Tongdarailway {
     // Directly reference a slf4j logger
     public static final Logger LOGGER = LogUtils.getLogger();
 
-    // Mod
-    public static volatile int CHUNK_GROUP_SIZE = 128;  // һ·ĴС ͨļ
-    public static final int HEIGHT_MAX_INCREMENT = 60;  // ·߶ںƽ
+    // Mod常量
+    public static volatile int CHUNK_GROUP_SIZE = 128;  // 一个路线生成区域的大小 可通过配置文件调整
+    public static final int HEIGHT_MAX_INCREMENT = 60;  // 路线生成最大高度相对于海平面的增量
 
     // The constructor for the mod class is the first code that is run when your mod is loaded.
     // FML will recognize some parameter types like IEventBus or ModContainer and pass them in automatically.
@@ -96,7 +96,7 @@ public class Tongdarailway {
             // Some client setup code
 
             event.enqueueWork(() -> {
-                // ע᷽ʵȾ
+                // 注册方块实体渲染器
                 BlockEntityRenderers.register(ModBlockEntities.TRACK_SPAWNER.get(), TrackSpawnerBlockRenderer::new);
             });
         }
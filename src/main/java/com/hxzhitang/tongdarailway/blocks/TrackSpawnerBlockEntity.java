@@ -45,7 +45,7 @@ public class TrackSpawnerBlockEntity extends BlockEntity {
             if (level instanceof ServerLevel world) {
                 for (TrackPutInfo track : entity.trackPutInfos) {
                     if (track.bezier() != null) {
-//                        //߲ܾ
+//                        //高差过大拒绝生成
 //                        if (Math.abs(track.bezier().endOffset().y) > 15)
 //                            continue;
                         placeCurveTrack(world, track);
@@ -53,8 +53,11 @@ public class TrackSpawnerBlockEntity extends BlockEntity {
                             placeCurveTrackEntity(world, track);
                         });
                     } else {
-                        if (!world.getBlockState(track.pos()).is(AllBlocks.TRACK)) {
-                            world.setBlock(track.pos(), AllBlocks.TRACK.getDefaultState().setValue(TrackBlock.SHAPE, track.shape()), 3);
+                        for (int i = 0; i < track.length(); i++) {
+                            BlockPos trackPos = track.blockAt(i);
+                            if (!world.getBlockState(trackPos).is(AllBlocks.TRACK)) {
+                                world.setBlock(trackPos, AllBlocks.TRACK.getDefaultState().setValue(TrackBlock.SHAPE, track.shape()), 3);
+                            }
                         }
                     }
                 }
@@ -100,14 +103,14 @@ public class TrackSpawnerBlockEntity extends BlockEntity {
     }
 
     private static void placeCurveTrack(ServerLevel world, TrackPutInfo track) {
-        // 1. õһֱ
+        // 1. 放置第一段直轨
         BlockPos startPos = track.pos();
         BlockState trackState = AllBlocks.TRACK.getDefaultState()
                 .setValue(TrackBlock.SHAPE, track.shape())
                 .setValue(TrackBlock.HAS_BE, true);
         world.setBlock(startPos, trackState, 3);
 
-        // 2. õڶֱ
+        // 2. 放置第二段直轨
         Vec3 offset = track.bezier().endOffset();
         BlockPos endPos = startPos.offset((int) offset.x, (int) offset.y, (int) offset.z);
         BlockState trackState2 = AllBlocks.TRACK.getDefaultState()
@@ -121,24 +124,24 @@ public class TrackSpawnerBlockEntity extends BlockEntity {
         Vec3 offset = track.bezier().endOffset();
         BlockPos endPos = startPos.offset((int) offset.x, (int) offset.y, (int) offset.z);
 
-        // 3. 
+        // 3. 创建贝塞尔连接
         TrackBlockEntity tbe1 = (TrackBlockEntity) world.getBlockEntity(startPos);
         TrackBlockEntity tbe2 = (TrackBlockEntity) world.getBlockEntity(endPos);
 
         if (tbe1 != null && tbe2 != null) {
-            // յ
+            // 定义起点和终点
             Vec3 start1 = track.bezier().start().add(getStartVec(track.bezier().startAxis()));
             Vec3 start2 = track.bezier().start().add(track.bezier().endOffset()).add(getStartVec(track.bezier().endAxis()));
 
-            // (߷)
-            Vec3 axis1 = track.bezier().startAxis();  // X
-            Vec3 axis2 = track.bezier().endAxis();  // Z
+            // 定义轴向(切线方向)
+            Vec3 axis1 = track.bezier().startAxis();  // X轴正方向
+            Vec3 axis2 = track.bezier().endAxis();  // Z轴正方向
 
-            // 巨()
+            // 定义法线(向上)
             Vec3 normal1 = new Vec3(0, 1, 0);
             Vec3 normal2 = new Vec3(0, 1, 0);
 
-            // 
+            // 创建贝塞尔连接
             BezierConnection connection = new BezierConnection(
                     Couple.create(startPos, endPos),
                     Couple.create(start1, start2),
@@ -151,7 +154,7 @@ public class TrackSpawnerBlockEntity extends BlockEntity {
             tbe1.setLevel(world.getLevel());
             tbe2.setLevel(world.getLevel());
 
-            // ӵ˵ķʵ
+            // 添加连接到两端的方块实体
             tbe1.addConnection(connection);
             tbe2.addConnection(connection.secondary());
         }
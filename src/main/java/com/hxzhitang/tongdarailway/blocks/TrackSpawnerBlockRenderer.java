@@ -24,17 +24,17 @@ public class TrackSpawnerBlockRenderer implements BlockEntityRenderer<TrackSpawn
 
         poseStack.pushPose();
 
-        // ƶ
+        // 移动到方块中心
         poseStack.translate(0.5, 0.5, 0.5);
 
-        // ת
+        // 添加旋转动画
         float time = (blockEntity.getLevel().getGameTime() + partialTick) * 2.0f;
         poseStack.mulPose(Axis.YP.rotationDegrees(time % 360));
 
-        // ƷС
+        // 缩放物品大小
         poseStack.scale(0.8f, 0.8f, 0.8f);
 
-        // ȾƷ
+        // 渲染物品
         itemRenderer.renderStatic(itemStack, ItemDisplayContext.FIXED, packedLight, packedOverlay, poseStack, bufferSource, blockEntity.getLevel(), 0);
 
         poseStack.popPose();
@@ -12,9 +12,9 @@ import net.neoforged.neoforge.common.world.BiomeModifiers;
 import net.neoforged.neoforge.registries.NeoForgeRegistries;
 
 public class ModBiomeModifiers {
-    // עkey
+    // 注册的key
     public static final ResourceKey<BiomeModifier> ADD_RAILWAY_AND_STATION = registerKey("add_railway_and_station");
-    // BootstapContext ɵ
+    // BootstapContext 数据生成的上下文
     public static void bootstrap(net.minecraft.data.worldgen.BootstrapContext<BiomeModifier> context) {
         var placedFeatures = context.lookup(Registries.PLACED_FEATURE);
         var biomes = context.lookup(Registries.BIOME);
@@ -33,7 +33,7 @@ public class ModDataGen extends DatapackBuiltinEntriesProvider {
         ExistingFileHelper efh = event.getExistingFileHelper();
         event.getGenerator().addProvider(event.includeServer(), (DataProvider.Factory<ModDataGen>) pOutput -> new ModDataGen(pOutput, lp));
 
-        // ļ
+        // 语言文件
         event.getGenerator().addProvider(
                 event.includeClient(),
                 (DataProvider.Factory<ModLanguageProviderENUS>) ModLanguageProviderENUS::new
@@ -42,12 +42,12 @@ public class ModDataGen extends DatapackBuiltinEntriesProvider {
                 event.includeClient(),
                 (DataProvider.Factory<ModLanguageProviderZHCN>) ModLanguageProviderZHCN::new
         );
-        // ״̬
+        // 方块状态
         event.getGenerator().addProvider(
                 event.includeClient(),
                 (DataProvider.Factory<ModBlockStateProvider>) pOutput -> new ModBlockStateProvider(pOutput, Tongdarailway.MODID, efh)
         );
-        // սƷ
+        // 战利品表
         event.getGenerator().addProvider(
                 event.includeServer(),
                 (Factory<ModLootTableProvider>) pOutput -> new ModLootTableProvider(
@@ -12,6 +12,6 @@ public class ModLanguageProviderZHCN extends LanguageProvider {
 
     @Override
     protected void addTranslations() {
-        this.add(ModBlocks.TRACK_SPAWNER.get(), "ˢ");
+        this.add(ModBlocks.TRACK_SPAWNER.get(), "轨道刷怪笼");
     }
 }
@@ -26,7 +26,7 @@ public abstract class NoiseBasedChunkGeneratorMixin {
     @Inject(method = "buildSurface", at = @At("HEAD"))
     public void surfaceStart(WorldGenRegion level, StructureManager structureManager, RandomState random, ChunkAccess chunk, CallbackInfo ci) {
         var dimensionType = level.dimensionType();
-        // ֻ·
+        // 只有主世界生成路
         if (dimensionType.effectsLocation().toString().equals("minecraft:overworld")) {
             RegionPos regionPos = MyMth.regionPosFromChunkPos(chunk.getPos());
 
@@ -34,10 +34,10 @@ public abstract class NoiseBasedChunkGeneratorMixin {
             railwayBuilder.generateRailway(regionPos);
 
 
-            // ɳվ
-            RailwayMap railwayMap = railwayBuilder.regionRailways.get(regionPos);
+            // 生成车站托盘
+            RailwayMap railwayMap = railwayBuilder.getRailway(regionPos);
             if (railwayMap != null) {
-                for (StationPlanner.StationGenInfo stationPlace : railwayMap.stations) {
+                for (StationPlanner.StationGenInfo stationPlace : railwayMap.getStations()) {
                     var station = stationPlace.stationTemplate();
                     if (station == null) continue;
                     if (station.type == StationTemplate.StationType.UNDER_GROUND) continue;
@@ -0,0 +1,97 @@
+package com.hxzhitang.tongdarailway.railway;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+// 规划任务表 每个规划阶段的每个产物同时只有一个任务在计算
+// 任务完成后结果写入对应的缓存，再从任务表中移除；失败或取消的任务直接移除，下次请求时重新计算
+//
+// 区域规划的阶段依赖:
+//   高度图(区域) 结构图(区域) 车站(区域)
+//        └──────── 五个相邻区域 ────────┘
+//                      ↓
+//        寻路窗口 → 连接路线 → 区域路线
+public class PlanTasks {
+    public enum Stage {
+        HEIGHT_MAP,     // 区域高度图
+        STRUCTURE_MAP,  // 区域结构图
+        STATION,        // 区域车站
+        WINDOW,         // 区域的寻路窗口
+        CONNECTION,     // 两个车站间的连接路线
+        RAILWAY         // 区域路线
+    }
+
+    public record Key(Stage stage, Object id) {
+    }
+
+    private final Map<Key, CompletableFuture<?>> running = new ConcurrentHashMap<>();
+
+    /**
+     * 获取某个阶段的结果
+     * 结果已缓存时直接返回；已有任务在计算时返回该任务；否则由当前线程启动新任务
+     * @param stage 阶段
+     * @param id 产物标识 如区域坐标
+     * @param cache 该阶段已完成结果的缓存
+     * @param starter 启动计算 在任务表的锁外调用，返回null表示任务未被接受
+     * @return 阶段结果 可以等待也可以附加后续操作；任务未被接受时返回null
+     */
+    @SuppressWarnings("unchecked")
+    public <K, T> CompletableFuture<T> get(Stage stage, K id, Map<K, T> cache, Function<K, CompletableFuture<T>> starter) {
+        Key key = new Key(stage, id);
+        T value = cache.get(id);
+        if (value != null) {
+            return CompletableFuture.completedFuture(value);
+        }
+
+        CompletableFuture<T> future = (CompletableFuture<T>) running.get(key);
+        if (future != null) {
+            return future;
+        }
+
+        CompletableFuture<T> created = new CompletableFuture<>();
+        future = (CompletableFuture<T>) running.putIfAbsent(key, created);
+        if (future != null) {
+            return future;
+        }
+
+        // 抢到执行权后再检查一次缓存 避免刚完成的任务被重复执行 这次不计入缓存的命中统计
+        value = cache instanceof RegionCache.Section<K, T> section ? section.peek(id) : cache.get(id);
+        if (value != null) {
+            running.remove(key, created);
+            created.complete(value);
+            return created;
+        }
+
+        CompletableFuture<T> started;
+        try {
+            started = starter.apply(id);
+        } catch (Throwable e) {
+            running.remove(key, created);
+            created.completeExceptionally(e);
+            return created;
+        }
+
+        if (started == null) {
+            // 任务未被接受 已经拿到该任务的等待者会收到取消
+            running.remove(key, created);
+            created.cancel(false);
+            return null;
+        }
+
+        started.whenComplete((result, e) -> {
+            // 先写缓存再移除任务 保证任何时刻都能从其中之一找到结果
+            if (e == null && result != null) {
+                cache.put(id, result);
+            }
+            running.remove(key, created);
+            if (e == null) {
+                created.complete(result);
+            } else {
+                created.completeExceptionally(e);
+            }
+        });
+        return created;
+    }
+}
@@ -1,31 +1,66 @@
 package com.hxzhitang.tongdarailway.railway;
 
+import com.hxzhitang.tongdarailway.Config;
 import com.hxzhitang.tongdarailway.Tongdarailway;
+import com.hxzhitang.tongdarailway.railway.planner.PlanningWindow;
+import com.hxzhitang.tongdarailway.railway.planner.RoutePlanner;
+import com.hxzhitang.tongdarailway.railway.planner.StationPlanner;
 import com.hxzhitang.tongdarailway.util.ModSaveData;
+import com.hxzhitang.tongdarailway.util.PlannerPool;
 import net.minecraft.server.level.ServerLevel;
 import net.minecraft.server.level.WorldGenRegion;
+import net.minecraft.world.level.ChunkPos;
 
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
-import java.util.concurrent.*;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
 
 public class RailwayBuilder {
     private static RailwayBuilder instance;
     private static long seed;
 
-    private final Map<RegionPos, Future<?>> regionFutures = new ConcurrentHashMap<>();
-    public final Map<RegionPos, RailwayMap> regionRailways = new ConcurrentHashMap<>();
-    public final Map<RegionPos, int[][]> regionHeightMap = new ConcurrentHashMap<>();
-    public final Map<RegionPos, int[][]> regionStructureMap = new ConcurrentHashMap<>();
+    // 以下六张表共用区域缓存的内存预算
+    public final Map<RegionPos, RailwayMap> regionRailways;
+    public final Map<RegionPos, short[]> regionHeightMap;    // 区域高度图 相对最低建筑高度
+    public final Map<RegionPos, long[]> regionStructureMap;  // 区域结构图 每格一位
+    public final Map<Long, float[]> clusterCosts;            // 分层寻路的簇内代价 各区域的寻路窗口共享
+    public final Map<StationPlanner.ConnectionKey, RoutePlanner.ResultWay> regionConnections;
+    public final Map<RegionPos, PlanningWindow> regionWindows;
+    public final Map<RegionPos, List<StationPlanner.StationGenInfo>> regionStations = new ConcurrentHashMap<>();
+    private final Map<StationPlanner.ConnectionKey, Integer> connectionUses = new ConcurrentHashMap<>();
+    private final Map<RegionPos, Integer> windowUses = new ConcurrentHashMap<>();
 
-    private final LinkedBlockingQueue<Runnable> regionRailwayLoadQueue = new LinkedBlockingQueue<Runnable>(); //̳߳
-    private final ThreadPoolExecutor regionRailwayLoadPoolExecutor = new ThreadPoolExecutor(64, 1024, 1, TimeUnit.DAYS, regionRailwayLoadQueue);
-    private final WorldGenRegion level;
+    private final ServerLevel level;
+    private final RegionPlanScheduler scheduler;
+    private final PlanTasks tasks = new PlanTasks();
+    private final RegionCache cache;
 
-    private RailwayBuilder(WorldGenRegion level) {
+    private RailwayBuilder(ServerLevel level) {
         this.level = level;
+        int maxRunning = Config.maxConcurrentRegionPlans > 0 ? Config.maxConcurrentRegionPlans : PlannerPool.get().getParallelism();
+        this.scheduler = new RegionPlanScheduler(maxRunning, Config.maxQueuedRegionPlans);
+
+        this.cache = new RegionCache(Config.regionCacheMegabytes * 1048576L, scheduler::getPlayerPositions);
+        this.regionRailways = cache.section("railways", RailwayMap::estimateBytes, pos -> pos);
+        this.regionHeightMap = cache.section("heightMaps", heights -> 16L + heights.length * 2L, pos -> pos);
+        this.regionStructureMap = cache.section("structureMaps", bits -> 16L + bits.length * 8L, pos -> pos);
+        this.clusterCosts = cache.section("clusterCosts", costs -> 32L + costs.length * 4L, PlanningWindow::clusterRegion);
+        // 连接路线由两个区域各取一半 重新规划可能得到不同的路线(时间预算、寻路方式)，两半就接不上了
+        // 所以不参与淘汰，只在两个区域都取走后由releaseConnection移除
+        this.regionConnections = cache.pinnedSection("connections", RoutePlanner.ResultWay::estimateBytes);
+        // 没有被释放的寻路窗口由预算兜底
+        this.regionWindows = cache.section("windows", PlanningWindow::estimateBytes, pos -> pos);
+    }
+    public static RailwayBuilder getInstance(long seed, WorldGenRegion level) {
+        return getInstance(seed, level.getLevel());
     }
-    public static synchronized RailwayBuilder getInstance(long seed, WorldGenRegion level) {
+
+    public static synchronized RailwayBuilder getInstance(long seed, ServerLevel level) {
         if (instance == null || RailwayBuilder.seed != seed) {
             instance = new RailwayBuilder(level);
             RailwayBuilder.seed = seed;
@@ -40,47 +75,204 @@ public class RailwayBuilder {
         return instance;
     }
 
-    // Ϊ··ߡδ߳̿ʼɡֱӷء
-    // ֻɹ滮·ߣʵʷ·ߣ
+    public RegionPlanScheduler getScheduler() {
+        return scheduler;
+    }
+
+    public RegionCache getCache() {
+        return cache;
+    }
+
+    // 为区块生成铁路路线。如未生成则阻塞线程开始生成。如已生成直接返回。
+    // 这里只生成规划路线，不实际放置路线！
     public void generateRailway(RegionPos regionPos) {
-        // ·Ѿɣֱӷ
-        if (regionRailways.containsKey(regionPos)) {
-            return;
-        }
+        while (true) {
+            CompletableFuture<RailwayMap> future = requestRailway(regionPos, true);
+            if (future == null || future.isDone() && !future.isCompletedExceptionally()) {
+                return;
+            }
 
-        // Դӱжȡ
-        ModSaveData data  = ModSaveData.get(Objects.requireNonNull(level.getServer()).getLevel(ServerLevel.OVERWORLD));
-        RailwayMap savedData = data.getRailwayMap(regionPos);
-        if (savedData != null) {
-            regionRailways.put(regionPos, savedData);
-            Tongdarailway.LOGGER.info("Region {} Done! Read From Local Data", regionPos);
-            return;
+            // 等待期间排队中的任务优先执行且不会被取消
+            scheduler.markBlocking(regionPos);
+            try {
+                // 等待线程生成
+                future.get();
+                return;
+            } catch (CancellationException e) {
+                // 预取任务在加入等待前被取消 重新提交
+            } catch (InterruptedException | ExecutionException e) {
+                Tongdarailway.LOGGER.error(e.getMessage());
+                return;
+            } finally {
+                scheduler.unmarkBlocking(regionPos);
+            }
         }
+    }
 
-        // ·߻δ...
+    /**
+     * 取已规划的区域路线 已被缓存淘汰的从存档中读回
+     * 与规划共用任务表，多个线程同时读回同一区域时只读一次，都拿到缓存中的同一个实例
+     * @return 区域路线 尚未规划时返回null
+     */
+    public RailwayMap getRailway(RegionPos regionPos) {
+        CompletableFuture<RailwayMap> future = tasks.get(PlanTasks.Stage.RAILWAY, regionPos, regionRailways, this::readSavedRailway);
+        if (future == null) {
+            return null;
+        }
         try {
-            // û߳·ߣ߳̿ʼ
-            if (!regionFutures.containsKey(regionPos)) {
-                var f = regionRailwayLoadPoolExecutor.submit(() -> {
-                    // ·...
-                    RailwayMap railwayMap = new RailwayMap(regionPos);
+            return future.join();
+        } catch (CancellationException | CompletionException e) {
+            return null;
+        }
+    }
+
+    // 从存档中读取区域路线 未保存过时返回null
+    private CompletableFuture<RailwayMap> readSavedRailway(RegionPos regionPos) {
+        ModSaveData data = ModSaveData.get(Objects.requireNonNull(level.getServer()).getLevel(ServerLevel.OVERWORLD));
+        RailwayMap savedData = data.getRailwayMap(regionPos);
+        if (savedData == null) {
+            return null;
+        }
+        // 已保存的车站可供相邻区域规划直接使用
+        regionStations.putIfAbsent(regionPos, savedData.getStations());
+        return CompletableFuture.completedFuture(savedData);
+    }
 
-                    railwayMap.startPlanningRoutes(level);
+    /**
+     * 区块已放置完地物 区域内所有区块都放置完后，路线数据只保留车站并移出缓存
+     */
+    public void markChunkDecorated(RailwayMap railwayMap, ChunkPos chunkPos) {
+        boolean released = railwayMap.markDecorated(chunkPos);
+        ModSaveData data = ModSaveData.get(Objects.requireNonNull(level.getServer()).getLevel(ServerLevel.OVERWORLD));
+        if (released) {
+            // 只有丢弃路线时才重写区域文件
+            data.putRailwayMap(railwayMap.regionPos, railwayMap);
+            regionRailways.remove(railwayMap.regionPos);
+            Tongdarailway.LOGGER.debug("Region {} fully decorated, released its routes and tracks", railwayMap.regionPos);
+        } else {
+            // 平时只记录放置进度 随主存档文件保存
+            long[] progress = railwayMap.decorationProgress();
+            if (progress != null)
+                data.putDecorationProgress(railwayMap.regionPos, progress);
+        }
+    }
 
-                    // ·߹滮
-                    regionRailways.put(regionPos, railwayMap);
+    // 预取区域路线 不阻塞当前线程
+    public void prefetchRailway(RegionPos regionPos) {
+        requestRailway(regionPos, false);
+    }
 
-                    //ݱ浽
-                    data.putRailwayMap(regionPos, railwayMap);
-                });
-                regionFutures.put(regionPos, f);
+    /**
+     * 请求区域路线 同一区域同时只会有一个规划任务
+     * @param regionPos 区域坐标
+     * @param blocking 调用线程是否会阻塞等待结果
+     * @return 区域路线 预取被拒绝时返回null
+     */
+    public CompletableFuture<RailwayMap> requestRailway(RegionPos regionPos, boolean blocking) {
+        var future = tasks.get(PlanTasks.Stage.RAILWAY, regionPos, regionRailways, pos -> {
+            // 尝试从本地数据中读取
+            CompletableFuture<RailwayMap> savedData = readSavedRailway(pos);
+            if (savedData != null) {
+                Tongdarailway.LOGGER.info("Region {} Done! Read From Local Data", pos);
+                return savedData;
             }
-            // ȴ߳
-            regionFutures.get(regionPos).get();
-        } catch (InterruptedException | ExecutionException e) {
-            Tongdarailway.LOGGER.error(e.getMessage());
-        } finally {
-            regionFutures.remove(regionPos);
+
+            // 如果路线还未生成，交给调度器排队生成
+            ModSaveData data = ModSaveData.get(Objects.requireNonNull(level.getServer()).getLevel(ServerLevel.OVERWORLD));
+            return scheduler.submit(pos, blocking, () -> {
+                // 生成铁路步骤...
+                RailwayMap railwayMap = new RailwayMap(pos);
+
+                railwayMap.startPlanningRoutes(level);
+
+                //将数据保存到磁盘
+                data.putRailwayMap(pos, railwayMap);
+
+                PlannerPool.logStatistics();
+                Tongdarailway.LOGGER.debug(scheduler.getStatistics());
+                Tongdarailway.LOGGER.debug(cache.getStatistics());
+                return railwayMap;
+            });
+        });
+
+        return future;
+    }
+
+    // 区域路线已规划 在缓存或存档中
+    private boolean hasRailway(RegionPos regionPos) {
+        if (regionRailways.containsKey(regionPos)) {
+            return true;
+        }
+        ModSaveData data = ModSaveData.get(Objects.requireNonNull(level.getServer()).getLevel(ServerLevel.OVERWORLD));
+        return data.hasRailwayMap(regionPos);
+    }
+
+    /**
+     * 请求区域高度图 同一区域只计算一次
+     */
+    public CompletableFuture<short[]> requestHeightMap(RegionPos regionPos) {
+        return tasks.get(PlanTasks.Stage.HEIGHT_MAP, regionPos, regionHeightMap,
+                pos -> CompletableFuture.supplyAsync(() -> RoutePlanner.getHeightMap(level, pos), PlannerPool.get()));
+    }
+
+    /**
+     * 请求区域结构图 同一区域只计算一次
+     */
+    public CompletableFuture<long[]> requestStructureMap(RegionPos regionPos) {
+        return tasks.get(PlanTasks.Stage.STRUCTURE_MAP, regionPos, regionStructureMap,
+                pos -> CompletableFuture.supplyAsync(() -> RoutePlanner.getStructureMap(level, pos), PlannerPool.get()));
+    }
+
+    /**
+     * 请求区域车站 同一区域只计算一次
+     */
+    public CompletableFuture<List<StationPlanner.StationGenInfo>> requestStations(RegionPos regionPos) {
+        return tasks.get(PlanTasks.Stage.STATION, regionPos, regionStations,
+                pos -> CompletableFuture.supplyAsync(() -> StationPlanner.generateStation(pos, level, level.getSeed()), PlannerPool.get()));
+    }
+
+    /**
+     * 请求两个车站间的连接路线 相邻两个区域共用同一次规划
+     */
+    public CompletableFuture<RoutePlanner.ResultWay> requestConnection(StationPlanner.ConnectionGenInfo connection) {
+        return tasks.get(PlanTasks.Stage.CONNECTION, connection.key(), regionConnections,
+                key -> RailwayMap.planConnection(connection, level));
+    }
+
+    /**
+     * 区域已取走连接路线 两个区域都取走后释放
+     * 另一端的区域已有路线(本次或之前的游戏中规划过)时不会再来取，直接释放
+     * @param regionPos 取走路线的区域
+     */
+    public void releaseConnection(StationPlanner.ConnectionGenInfo connection, RegionPos regionPos) {
+        StationPlanner.ConnectionKey key = connection.key();
+        RegionPos other = regionPos.equals(connection.planRegion()) ? connection.neighborRegion() : connection.planRegion();
+        if (hasRailway(other) || connectionUses.merge(key, 1, Integer::sum) >= 2) {
+            connectionUses.remove(key);
+            regionConnections.remove(key);
+        }
+    }
+
+    /**
+     * 请求区域的寻路窗口 该区域负责规划的连接共用
+     */
+    public CompletableFuture<PlanningWindow> requestWindow(RegionPos regionPos) {
+        return tasks.get(PlanTasks.Stage.WINDOW, regionPos, regionWindows,
+                pos -> new RoutePlanner(pos).requestWindow(level, clusterCosts));
+    }
+
+    /**
+     * 一条连接已在区域的寻路窗口中规划完 区域负责的两条连接(东、南)都规划完后释放
+     * 另一条连接两端的区域都已有路线时不会再有人请求它，直接释放
+     */
+    public void releaseWindow(StationPlanner.ConnectionGenInfo connection) {
+        RegionPos regionPos = connection.planRegion();
+        RegionPos other = connection.exitDir().x != 0
+                ? new RegionPos(regionPos.x(), regionPos.z() + 1)
+                : new RegionPos(regionPos.x() + 1, regionPos.z());
+        if (hasRailway(regionPos) && hasRailway(other) || windowUses.merge(regionPos, 1, Integer::sum) >= 2) {
+            windowUses.remove(regionPos);
+            regionWindows.remove(regionPos);
         }
     }
 }
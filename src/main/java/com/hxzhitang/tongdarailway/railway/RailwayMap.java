@@ -1,80 +1,234 @@
 package com.hxzhitang.tongdarailway.railway;
 
+import com.hxzhitang.tongdarailway.Config;
+import com.hxzhitang.tongdarailway.railway.planner.PlanningWindow;
 import com.hxzhitang.tongdarailway.railway.planner.RoutePlanner;
 import com.hxzhitang.tongdarailway.railway.planner.StationPlanner;
 import com.hxzhitang.tongdarailway.structure.TrackPutInfo;
 import com.hxzhitang.tongdarailway.util.*;
+import net.minecraft.core.BlockPos;
 import net.minecraft.nbt.CompoundTag;
 import net.minecraft.nbt.IntTag;
 import net.minecraft.nbt.ListTag;
 import net.minecraft.nbt.Tag;
-import net.minecraft.server.level.WorldGenRegion;
+import net.minecraft.server.level.ServerLevel;
 import net.minecraft.world.level.ChunkPos;
-import net.minecraft.world.phys.Vec2;
 import net.minecraft.world.phys.Vec3;
 
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 
 import static com.hxzhitang.tongdarailway.Tongdarailway.CHUNK_GROUP_SIZE;
 
 public class RailwayMap {
-    public static final int samplingNum = 2; // ÿĲ
+    public static final int samplingNum = 2; // 每个区块的采样数
+    public static final int SCOPE_MAX_COST = 10000; // 寻路限制区域外消耗
+    private static final int SCOPE_WIDTH = 64;  // 寻路限制区域最大宽度
 
     public final RegionPos regionPos;
 
-    //********ÿ*********
-    // ·
-    public final Map<ChunkPos, Set<CurveRoute>> routeMap = new ConcurrentHashMap<>();
-    // վ
-    public final List<StationPlanner.StationGenInfo> stations = new ArrayList<>();
-    // 
-    public final Map<ChunkPos, List<TrackPutInfo>> trackMap = new ConcurrentHashMap<>();
-    //********ÿ*********
+    //********每个区域的数据*********
+    // 只在规划或读取时填入 freeze后置为null，之后只能通过只读视图访问
+    // 路线
+    Map<ChunkPos, Set<CurveRoute>> routeMap = new HashMap<>();
+    // 车站
+    List<StationPlanner.StationGenInfo> stations = new ArrayList<>();
+    // 铁轨
+    Map<ChunkPos, List<TrackPutInfo>> trackMap = new HashMap<>();
+    //********每个区域的数据*********
+
+    // 已放置过地物的区块 按 区域内x * CHUNK_GROUP_SIZE + 区域内z 编号
+    final BitSet decoratedChunks = new BitSet();   // 需持有锁
+    // 所有区块都已放置 路线和铁轨已丢弃，只保留车站
+    boolean compacted = false;   // 需持有锁
+
+    // 规划完成后的只读视图 世界生成线程无锁读取
+    private volatile Frozen frozen;
+
+    private record Frozen(
+            FrozenChunkMap<CurveRoute> routes,
+            FrozenChunkMap<TrackPutInfo> tracks,
+            List<StationPlanner.StationGenInfo> stations
+    ) {
+    }
+
+    /**
+     * 存档用的快照 在锁内取出，序列化时不再持有锁
+     * @param decoratedChunks 已放置过地物的区块 已丢弃路线时为空
+     */
+    public record Snapshot(
+            RegionPos regionPos,
+            FrozenChunkMap<CurveRoute> routes,
+            FrozenChunkMap<TrackPutInfo> tracks,
+            List<StationPlanner.StationGenInfo> stations,
+            long[] decoratedChunks,
+            boolean compacted
+    ) {
+    }
 
     public RailwayMap(RegionPos regionPos) {
         this.regionPos = regionPos;
     }
 
-    // 滮··߷
-    public void startPlanningRoutes(WorldGenRegion level) {
+    /**
+     * 规划或读取完成后调用 生成按区块编号(ChunkPos.toLong())索引的只读视图
+     * 之后不再持有routeMap、trackMap、stations
+     */
+    public synchronized void freeze() {
+        if (frozen != null)
+            return;
+        frozen = new Frozen(FrozenChunkMap.copyOf(routeMap), FrozenChunkMap.copyOf(trackMap), List.copyOf(stations));
+        routeMap = null;
+        trackMap = null;
+        stations = null;
+    }
+
+    private Frozen view() {
+        Frozen f = frozen;
+        if (f == null) {
+            synchronized (this) {
+                f = frozen;
+                if (f == null) {
+                    freeze();
+                    f = frozen;
+                }
+            }
+        }
+        return f;
+    }
+
+    /**
+     * 经过区块的路线
+     * @param chunkKey ChunkPos.toLong()
+     */
+    public List<CurveRoute> getRoutes(long chunkKey) {
+        return view().routes.get(chunkKey);
+    }
+
+    /**
+     * 区块中的铁轨
+     * @param chunkKey ChunkPos.toLong()
+     */
+    public List<TrackPutInfo> getTracks(long chunkKey) {
+        return view().tracks.get(chunkKey);
+    }
+
+    public List<StationPlanner.StationGenInfo> getStations() {
+        return view().stations;
+    }
+
+    /**
+     * 取出存档用的快照 只读视图本身不会被修改，只需复制放置进度
+     */
+    public synchronized Snapshot snapshot() {
+        Frozen f = view();
+        return new Snapshot(regionPos, f.routes, f.tracks, f.stations, compacted ? new long[0] : decoratedChunks.toLongArray(), compacted);
+    }
+
+    /**
+     * 记录区块已放置地物 区域内所有区块都放置完后丢弃路线和铁轨，只保留车站
+     * @return 是否因此丢弃了路线和铁轨
+     */
+    public synchronized boolean markDecorated(ChunkPos chunkPos) {
+        if (compacted)
+            return false;
+        int x = chunkPos.x - regionPos.x() * CHUNK_GROUP_SIZE;
+        int z = chunkPos.z - regionPos.z() * CHUNK_GROUP_SIZE;
+        if (x < 0 || x >= CHUNK_GROUP_SIZE || z < 0 || z >= CHUNK_GROUP_SIZE)
+            return false;
+        decoratedChunks.set(x * CHUNK_GROUP_SIZE + z);
+        return compactIfDone();
+    }
+
+    /**
+     * 合并另外保存的放置进度 区域文件中的进度可能比它旧
+     * @return 是否因此丢弃了路线和铁轨
+     */
+    public synchronized boolean mergeDecorated(long[] decorated) {
+        if (compacted)
+            return false;
+        decoratedChunks.or(BitSet.valueOf(decorated));
+        return compactIfDone();
+    }
 
+    /**
+     * 放置进度 已丢弃路线和铁轨时返回null
+     */
+    public synchronized long[] decorationProgress() {
+        return compacted ? null : decoratedChunks.toLongArray();
+    }
 
-        // ͼ
-        RoutePlanner routePlanner = new RoutePlanner(regionPos);
-        int[][] costMap = routePlanner.getCostMap(level);
-        // Ѱ·ר
-        int[][] costMapFindPath = routePlanner.getStructureCostMap(level);
+    private boolean compactIfDone() {
+        if (decoratedChunks.cardinality() < CHUNK_GROUP_SIZE * CHUNK_GROUP_SIZE)
+            return false;
+        compacted = true;
+        frozen = new Frozen(FrozenChunkMap.empty(), FrozenChunkMap.empty(), view().stations);
+        return true;
+    }
 
-        // ɳվλúӹ滮
+    // 规划铁路路线方法
+    public void startPlanningRoutes(ServerLevel level) {
+        RailwayBuilder builder = RailwayBuilder.getInstance(level.getSeed());
         StationPlanner stationPlanner = new StationPlanner(regionPos);
-        stations.addAll(StationPlanner.generateStation(regionPos, level.getLevel(), level.getSeed()));
-        var connections = stationPlanner.generateConnections(level.getLevel(), level.getSeed());
-        // ·ͼ
-//        List<List<int[]>> test = new ArrayList<>();
 
+        // 生成车站位置和连接规划 相邻区域的车站在线程池中并行计算，并与相邻区域的规划共享
+        var regionStations = stationPlanner.requestStations(level).join();
+        stations.addAll(regionStations.get(regionPos));
+        var connections = stationPlanner.generateConnections(regionStations);
+
+        // 生成路线图 每条连接只规划一次，相邻两个区域各取自己的部分
+        // 各连接只读共享的损耗图，先全部提交并行规划，再按连接顺序合并，结果与逐条规划相同
+        List<CompletableFuture<RoutePlanner.ResultWay>> routes = new ArrayList<>();
         for (StationPlanner.ConnectionGenInfo connection : connections) {
-            // תΪͼϵ
-            int[] picStart = AStarPathfinder.world2PicPos(connection.connectStart(), regionPos);
-            int[] picEnd = AStarPathfinder.world2PicPos(connection.connectEnd(), regionPos);
-            List<int[]> way = AStarPathfinder.findPath(costMap, picStart, picEnd,
-                    (x, y) -> {
-                        int scopeLimit = scopeLimit(x, y, picStart, picEnd);
-                        int heightLimit = costMap[x][y] < level.getSeaLevel()+2 ? 100 : 0;
-                        int structLimit = costMapFindPath[x][y];
-                        return scopeLimit + heightLimit + structLimit;
-                    });
-//            test.add(way);
-            // ó
-            var route = routePlanner.getWay(way, costMap, connection, level.getLevel());
-            putChunk(route);
+            CompletableFuture<RoutePlanner.ResultWay> route;
+            if (builder != null) {
+                route = builder.requestConnection(connection);
+            } else {
+                route = planConnection(connection, level);
+            }
+            if (!Config.parallelConnectionPlanning) {
+                route.join();
+            }
+            routes.add(route);
         }
 
+        for (int i = 0; i < connections.size(); i++) {
+            putChunk(routes.get(i).join());
+            if (builder != null) {
+                builder.releaseConnection(connections.get(i), regionPos);
+            }
+        }
+        freeze();
+    }
+
+    /**
+     * 在负责规划的区域的寻路窗口中规划一条连接
+     * 寻路窗口和地标都就绪后才提交寻路，池内线程不会阻塞等待它们
+     * @param connection 连接信息
+     * @return 路线
+     */
+    public static CompletableFuture<RoutePlanner.ResultWay> planConnection(StationPlanner.ConnectionGenInfo connection, ServerLevel level) {
+        RoutePlanner routePlanner = new RoutePlanner(connection.planRegion());
+        RailwayBuilder builder = RailwayBuilder.getInstance(level.getSeed());
+        if (builder == null) {
+            return routePlanner.requestWindow(level, new ConcurrentHashMap<>())
+                    .thenCompose(window -> planInWindow(routePlanner, connection, window, level));
+        }
+        // 寻路窗口由该区域负责的连接共用
+        return builder.requestWindow(connection.planRegion())
+                .thenCompose(window -> planInWindow(routePlanner, connection, window, level))
+                .whenComplete((route, e) -> builder.releaseWindow(connection));
+    }
+
+    private static CompletableFuture<RoutePlanner.ResultWay> planInWindow(RoutePlanner routePlanner, StationPlanner.ConnectionGenInfo connection,
+                                                                        PlanningWindow window, ServerLevel level) {
+        return window.requestLandmarks().thenApplyAsync(landmarks -> routePlanner.planConnection(connection, window, level), PlannerPool.get());
     }
 
     /**
-     * ·
-     * @param route ·
+     * 添加路径到区块
+     * @param route 路径
      */
     private void putChunk(RoutePlanner.ResultWay route) {
         for (CurveRoute.CurveSegment segment : route.way().getSegments()) {
@@ -92,63 +246,125 @@ public class RailwayMap {
             }
         }
 
+        // 路线由相邻两个区域共享 只保留本区域内的铁轨
+        // 连续的直轨按区块切开 每个区块只存落在其中的一段
         for (TrackPutInfo track : route.trackPutInfos()) {
-            var pos = track.pos();
-            trackMap.computeIfAbsent(new ChunkPos(Math.floorDiv(pos.getX(), 16), Math.floorDiv(pos.getZ(), 16)), k -> new ArrayList<>()).add(track);
+            int from = 0;
+            long chunk = chunkOf(track.pos());
+            for (int i = 1; i <= track.length(); i++) {
+                long next = i < track.length() ? chunkOf(track.blockAt(i)) : Long.MIN_VALUE;
+                if (next == chunk)
+                    continue;
+                int cx = ChunkPos.getX(chunk);
+                int cz = ChunkPos.getZ(chunk);
+                if (cx >= regionPos.x()*CHUNK_GROUP_SIZE && cx < (regionPos.x()+1)*CHUNK_GROUP_SIZE && cz >= regionPos.z()*CHUNK_GROUP_SIZE && cz < (regionPos.z()+1)*CHUNK_GROUP_SIZE) {
+                    trackMap.computeIfAbsent(new ChunkPos(cx, cz), k -> new ArrayList<>()).add(track.slice(from, i - from));
+                }
+                from = i;
+                chunk = next;
+            }
         }
     }
 
-    public static int scopeLimit(int x, int z, int[] picStart, int[] picEnd) {
-        // Ѱ·
-        int maxCost = 10000; // 
-        int A = 64;  // 
-
-        double length = new Vec2(picEnd[0]-picStart[0], picEnd[1]-picStart[1]).length();
+    private static long chunkOf(BlockPos pos) {
+        return ChunkPos.asLong(Math.floorDiv(pos.getX(), 16), Math.floorDiv(pos.getZ(), 16));
+    }
 
-        Vec3 p = new Vec3(x, 0, z);
+    /**
+     * 栅格化寻路限制区域 每条连接只计算一次
+     * @param rows 损耗图行数
+     * @param cols 损耗图列数
+     * @return 按格子编号(x * cols + z)索引的位图 在限制区域内的格子置位
+     */
+    public static BitSet scopeMask(int rows, int cols, int[] picStart, int[] picEnd) {
+        Scope scope = new Scope(picStart, picEnd);
+        BitSet mask = new BitSet(rows * cols);
+        for (int x = 0; x < rows; x++) {
+            for (int z = 0; z < cols; z++) {
+                if (scope.contains(x, z))
+                    mask.set(x * cols + z);
+            }
+        }
+        return mask;
+    }
 
-        Vec3 va = new Vec3(picEnd[0]-picStart[0], 0, picEnd[1]-picStart[1]).normalize();
-        Vec3 vert = new Vec3(0, 1, 0);
-        Vec3 vb = va.cross(vert);
+    // 正弦形的寻路限制区域 与原先用Vec3计算的结果一致
+    private static final class Scope {
+        private final double length;
+        private final double vaX, vaZ;
+
+        Scope(int[] picStart, int[] picEnd) {
+            int dx = picEnd[0]-picStart[0];
+            int dz = picEnd[1]-picStart[1];
+            this.length = (float) Math.sqrt((float) dx * dx + (float) dz * dz);
+            double d = Math.sqrt((double) dx * dx + (double) dz * dz);
+            this.vaX = d < 1.0E-5F ? 0 : dx / d;
+            this.vaZ = d < 1.0E-5F ? 0 : dz / d;
+        }
 
-        double a = p.dot(va) / length;
-        if (a < 0 || a > 1)
-            return maxCost;
+        boolean contains(int x, int z) {
+            double a = (x * vaX + z * vaZ) / length;
+            if (a < 0 || a > 1)
+                return false;
 
-        double b = Math.abs(p.dot(vb));
-        double py = A * Math.sin(Math.PI * a);
+            // 垂直方向 va × (0, 1, 0)
+            double b = Math.abs(x * -vaZ + z * vaX);
+            double py = SCOPE_WIDTH * Math.sin(Math.PI * a);
 
-        if (b > py)
-            return maxCost;
+            return !(b > py);
+        }
+    }
 
-        return 0;
+    /**
+     * 估算占用的内存 用于区域缓存的预算
+     * 同一条路线会出现在多个区块中，只计一次
+     */
+    public long estimateBytes() {
+        Frozen f = view();
+        long bytes = 64;
+        Set<CurveRoute> routes = Collections.newSetFromMap(new IdentityHashMap<>());
+        routes.addAll(f.routes.values());
+        for (CurveRoute route : routes) {
+            bytes += route.estimateBytes();
+        }
+        for (TrackPutInfo track : f.tracks.values()) {
+            bytes += track.bezier() != null ? 256 : 72;
+        }
+        bytes += f.stations.size() * 128L;
+        // 只读视图的索引、各区块的列表和元素数组
+        bytes += (f.routes.size() + f.tracks.size()) * 56L;
+        bytes += (f.routes.values().size() + f.tracks.values().size()) * 8L;
+        return bytes;
     }
 
+    // 从快照写出 不持有锁
     public CompoundTag toNBT() {
+        Snapshot snapshot = snapshot();
         CompoundTag nbt = new CompoundTag();
         nbt.put("RegionPos", regionPos.toNBT());
+        nbt.putBoolean("Compacted", snapshot.compacted());
+        if (!snapshot.compacted())
+            nbt.putLongArray("DecoratedChunks", snapshot.decoratedChunks());
 
-        // 泵վ
+        // 保存车站
         ListTag stationTag = new ListTag();
-        stations.forEach(station -> stationTag.add(station.toNBT()));
+        snapshot.stations().forEach(station -> stationTag.add(station.toNBT()));
         nbt.put("Stations", stationTag);
 
-        // ·
+        // 保存路线
         List<CurveRoute> palette = new ArrayList<>();
+        Map<CurveRoute, Integer> paletteIndex = new IdentityHashMap<>();
         ListTag routeMapTag = new ListTag();
-        routeMap.forEach((pos, routes) -> {
+        snapshot.routes().forEach((chunkKey, routes) -> {
             CompoundTag chunkNbt = new CompoundTag();
-            chunkNbt.putInt("ChunkPosX", pos.x);
-            chunkNbt.putInt("ChunkPosZ", pos.z);
+            chunkNbt.putInt("ChunkPosX", ChunkPos.getX(chunkKey));
+            chunkNbt.putInt("ChunkPosZ", ChunkPos.getZ(chunkKey));
             ListTag routesTag = new ListTag();
             for (CurveRoute route : routes) {
-                int index;
-                if (palette.contains(route)) {
-                    index = palette.indexOf(route);
-                } else {
-                    palette.add(route);
-                    index = palette.size() - 1;
-                }
+                int index = paletteIndex.computeIfAbsent(route, r -> {
+                    palette.add(r);
+                    return palette.size() - 1;
+                });
                 routesTag.add(IntTag.valueOf(index));
             }
             chunkNbt.put("Routes", routesTag);
@@ -161,12 +377,12 @@ public class RailwayMap {
         nbt.put("RouteMap", routeMapTag);
         nbt.put("RoutePalette", paletteTag);
 
-        // 
+        // 保存铁轨
         ListTag trackMapTag = new ListTag();
-        trackMap.forEach((pos, tracks) -> {
+        snapshot.tracks().forEach((chunkKey, tracks) -> {
             CompoundTag chunkNbt = new CompoundTag();
-            chunkNbt.putInt("ChunkPosX", pos.x);
-            chunkNbt.putInt("ChunkPosZ", pos.z);
+            chunkNbt.putInt("ChunkPosX", ChunkPos.getX(chunkKey));
+            chunkNbt.putInt("ChunkPosZ", ChunkPos.getZ(chunkKey));
             ListTag tracksTag = new ListTag();
             for (TrackPutInfo track : tracks) {
                 tracksTag.add(track.toNBT());
@@ -182,8 +398,10 @@ public class RailwayMap {
     public static RailwayMap fromNBT(CompoundTag nbt) {
         RegionPos regionPos = RegionPos.fromNBT((ListTag) nbt.get("RegionPos"));
         RailwayMap railwayMap = new RailwayMap(regionPos);
+        railwayMap.compacted = nbt.getBoolean("Compacted");
+        railwayMap.decoratedChunks.or(BitSet.valueOf(nbt.getLongArray("DecoratedChunks")));
 
-        // ȡվ
+        // 读取车站
         ListTag stationTag = (ListTag) nbt.get("Stations");
         if (stationTag != null) {
             for (net.minecraft.nbt.Tag tag : stationTag) {
@@ -192,7 +410,7 @@ public class RailwayMap {
             }
         }
 
-        // ȡ·
+        // 读取路径
         ListTag routeTag = (ListTag) nbt.get("RouteMap");
         ListTag paletteTag = (ListTag) nbt.get("RoutePalette");
         List<CurveRoute> palette = new ArrayList<>();
@@ -215,7 +433,7 @@ public class RailwayMap {
             }
         }
 
-        // ȡ
+        // 读取铁轨
         ListTag trackTag = (ListTag) nbt.get("TrackMap");
         if (trackTag != null) {
             for (net.minecraft.nbt.Tag tag : trackTag) {
@@ -232,6 +450,7 @@ public class RailwayMap {
             }
         }
 
+        railwayMap.freeze();
         return railwayMap;
     }
 }
\ No newline at end of file
@@ -0,0 +1,356 @@
+package com.hxzhitang.tongdarailway.railway;
+
+import com.hxzhitang.tongdarailway.railway.planner.StationPlanner;
+import com.hxzhitang.tongdarailway.structure.StationTemplate;
+import com.hxzhitang.tongdarailway.structure.TrackPutInfo;
+import com.hxzhitang.tongdarailway.util.CurveRoute;
+import com.hxzhitang.tongdarailway.util.FrozenChunkMap;
+import com.simibubi.create.content.trains.track.TrackShape;
+import net.minecraft.core.BlockPos;
+import net.minecraft.world.level.ChunkPos;
+import net.minecraft.world.phys.Vec3;
+
+import java.io.*;
+import java.util.*;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+// 区域路线的二进制格式
+// 文件头(魔数 + 版本)之后整体压缩，同类数据按列连续存放：
+//   车站 | 路线调色板 | 各区块的路线编号 | 各区块的铁轨数 | 铁轨坐标差 | 形状 | 直轨段长度和方向 | 曲线参数
+// 区块坐标和铁轨坐标都存与上一个的差值(变长整数)，铁轨形状存形状名表中的序号
+// 版本1为NBT格式(RailwayMap.toNBT)，由调用方判断文件头后选择读取方式；版本2没有直轨段，每条铁轨只有一格
+public class RailwayMapCodec {
+    public static final int MAGIC = 0x5444524D;   // "TDRM"
+    public static final int VERSION = 3;
+
+    private static final int SEGMENT_LINE = 0;
+    private static final int SEGMENT_BEZIER = 1;
+
+    /**
+     * 文件开头是否为本格式的文件头
+     */
+    public static boolean isBinary(byte[] header) {
+        return header.length >= 4 && ((header[0] & 0xFF) << 24 | (header[1] & 0xFF) << 16 | (header[2] & 0xFF) << 8 | (header[3] & 0xFF)) == MAGIC;
+    }
+
+    /**
+     * 写出区域路线 快照不再修改，不需要持有锁
+     */
+    public static void write(RailwayMap.Snapshot snapshot, OutputStream stream) throws IOException {
+        DataOutputStream header = new DataOutputStream(stream);
+        header.writeInt(MAGIC);
+        header.writeByte(VERSION);
+        DeflaterOutputStream deflater = new DeflaterOutputStream(stream, new Deflater(Deflater.BEST_SPEED), 1 << 16);
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(deflater, 1 << 16));
+        writeBody(snapshot, out);
+        out.flush();
+        deflater.finish();
+    }
+
+    public static RailwayMap read(InputStream stream) throws IOException {
+        DataInputStream header = new DataInputStream(stream);
+        if (header.readInt() != MAGIC)
+            throw new IOException("Not a railway region file");
+        int version = header.readUnsignedByte();
+        if (version < 2 || version > VERSION)
+            throw new IOException("Unsupported railway region version " + version);
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new InflaterInputStream(stream), 1 << 16));
+        return readBody(in, version);
+    }
+
+    private static void writeBody(RailwayMap.Snapshot snapshot, DataOutputStream out) throws IOException {
+        writeSigned(out, snapshot.regionPos().x());
+        writeSigned(out, snapshot.regionPos().z());
+        out.writeBoolean(snapshot.compacted());
+        long[] decorated = snapshot.decoratedChunks();
+        writeUnsigned(out, decorated.length);
+        for (long bits : decorated) {
+            out.writeLong(bits);
+        }
+
+        // 车站
+        writeUnsigned(out, snapshot.stations().size());
+        for (StationPlanner.StationGenInfo station : snapshot.stations()) {
+            StationTemplate template = station.stationTemplate();
+            writeSigned(out, template == null ? -1 : template.getType().ordinal());
+            writeSigned(out, template == null ? -1 : template.getId());
+            writeSigned(out, station.placePos().getX());
+            writeSigned(out, station.placePos().getY());
+            writeSigned(out, station.placePos().getZ());
+        }
+
+        // 路线调色板 同一条路线出现在多个区块中，只存一次
+        List<CurveRoute> palette = new ArrayList<>();
+        Map<CurveRoute, Integer> paletteIndex = new IdentityHashMap<>();
+        List<ChunkPos> routeChunks = sortedChunks(snapshot.routes());
+        for (ChunkPos pos : routeChunks) {
+            for (CurveRoute route : snapshot.routes().get(pos.toLong())) {
+                paletteIndex.computeIfAbsent(route, r -> {
+                    palette.add(r);
+                    return palette.size() - 1;
+                });
+            }
+        }
+        writeUnsigned(out, palette.size());
+        for (CurveRoute route : palette) {
+            List<CurveRoute.CurveSegment> segments = route.getSegments();
+            writeUnsigned(out, segments.size());
+            for (CurveRoute.CurveSegment segment : segments) {
+                if (segment instanceof CurveRoute.BezierSegment bezier) {
+                    out.writeByte(SEGMENT_BEZIER);
+                    writeVec(out, bezier.p0);
+                    writeVec(out, bezier.p1);
+                    writeVec(out, bezier.p2);
+                    writeVec(out, bezier.p3);
+                } else if (segment instanceof CurveRoute.LineSegment line) {
+                    out.writeByte(SEGMENT_LINE);
+                    writeVec(out, line.start);
+                    writeVec(out, line.end);
+                }
+            }
+        }
+
+        // 各区块的路线编号
+        writeChunks(out, routeChunks);
+        for (ChunkPos pos : routeChunks) {
+            List<CurveRoute> routes = snapshot.routes().get(pos.toLong());
+            writeUnsigned(out, routes.size());
+            for (CurveRoute route : routes) {
+                writeUnsigned(out, paletteIndex.get(route));
+            }
+        }
+
+        // 铁轨 按列存放
+        List<ChunkPos> trackChunks = sortedChunks(snapshot.tracks());
+        writeChunks(out, trackChunks);
+        List<TrackPutInfo> tracks = new ArrayList<>();
+        for (ChunkPos pos : trackChunks) {
+            List<TrackPutInfo> chunkTracks = snapshot.tracks().get(pos.toLong());
+            writeUnsigned(out, chunkTracks.size());
+            tracks.addAll(chunkTracks);
+        }
+        int lastX = 0, lastY = 0, lastZ = 0;
+        for (TrackPutInfo track : tracks) {
+            writeSigned(out, track.pos().getX() - lastX);
+            writeSigned(out, track.pos().getY() - lastY);
+            writeSigned(out, track.pos().getZ() - lastZ);
+            lastX = track.pos().getX();
+            lastY = track.pos().getY();
+            lastZ = track.pos().getZ();
+        }
+        // 形状名表 不依赖机械动力中枚举的顺序
+        List<TrackShape> shapes = new ArrayList<>();
+        Map<TrackShape, Integer> shapeIndex = new EnumMap<>(TrackShape.class);
+        for (TrackPutInfo track : tracks) {
+            for (TrackShape shape : new TrackShape[] {track.shape(), track.endShape()}) {
+                if (shape != null && !shapeIndex.containsKey(shape)) {
+                    shapeIndex.put(shape, shapes.size());
+                    shapes.add(shape);
+                }
+            }
+        }
+        writeUnsigned(out, shapes.size());
+        for (TrackShape shape : shapes) {
+            out.writeUTF(shape.name());
+        }
+        // 形状序号 有曲线的铁轨加上标记位
+        for (TrackPutInfo track : tracks) {
+            int code = shapeIndex.get(track.shape()) << 1;
+            writeUnsigned(out, track.bezier() != null ? code | 1 : code);
+        }
+        // 直轨段的长度 长度大于1的再存前进方向
+        for (TrackPutInfo track : tracks) {
+            writeUnsigned(out, track.length() - 1);
+        }
+        for (TrackPutInfo track : tracks) {
+            if (track.length() > 1)
+                out.writeByte((track.stepX() + 1) * 3 + track.stepZ() + 1);
+        }
+        for (TrackPutInfo track : tracks) {
+            TrackPutInfo.BezierInfo bezier = track.bezier();
+            if (bezier == null) continue;
+            writeUnsigned(out, shapeIndex.get(track.endShape()));
+            writeVec(out, bezier.start());
+            writeVec(out, bezier.startAxis());
+            writeVec(out, bezier.endOffset());
+            writeVec(out, bezier.endAxis());
+        }
+    }
+
+    private static RailwayMap readBody(DataInputStream in, int version) throws IOException {
+        RailwayMap railwayMap = new RailwayMap(new RegionPos(readSigned(in), readSigned(in)));
+        railwayMap.compacted = in.readBoolean();
+        long[] decorated = new long[readUnsigned(in)];
+        for (int i = 0; i < decorated.length; i++) {
+            decorated[i] = in.readLong();
+        }
+        railwayMap.decoratedChunks.or(BitSet.valueOf(decorated));
+
+        // 车站
+        int stationCount = readUnsigned(in);
+        StationTemplate.StationType[] types = StationTemplate.StationType.values();
+        for (int i = 0; i < stationCount; i++) {
+            int type = readSigned(in);
+            int id = readSigned(in);
+            BlockPos pos = new BlockPos(readSigned(in), readSigned(in), readSigned(in));
+            railwayMap.stations.add(type < 0 ? new StationPlanner.StationGenInfo(null, pos) : StationPlanner.StationGenInfo.of(types[type], id, pos));
+        }
+
+        // 路线调色板
+        CurveRoute[] palette = new CurveRoute[readUnsigned(in)];
+        for (int i = 0; i < palette.length; i++) {
+            int segmentCount = readUnsigned(in);
+            List<CurveRoute.CurveSegment> segments = new ArrayList<>(segmentCount);
+            for (int s = 0; s < segmentCount; s++) {
+                if (in.readUnsignedByte() == SEGMENT_BEZIER) {
+                    segments.add(new CurveRoute.BezierSegment(readVec(in), readVec(in), readVec(in), readVec(in)));
+                } else {
+                    segments.add(new CurveRoute.LineSegment(readVec(in), readVec(in)));
+                }
+            }
+            palette[i] = new CurveRoute();
+            palette[i].addSegments(segments);
+        }
+
+        // 各区块的路线编号
+        ChunkPos[] routeChunks = readChunks(in);
+        for (ChunkPos pos : routeChunks) {
+            int count = readUnsigned(in);
+            Set<CurveRoute> routes = new HashSet<>();
+            for (int i = 0; i < count; i++) {
+                routes.add(palette[readUnsigned(in)]);
+            }
+            railwayMap.routeMap.put(pos, routes);
+        }
+
+        // 铁轨
+        ChunkPos[] trackChunks = readChunks(in);
+        int[] trackCounts = new int[trackChunks.length];
+        int total = 0;
+        for (int c = 0; c < trackChunks.length; c++) {
+            trackCounts[c] = readUnsigned(in);
+            total += trackCounts[c];
+        }
+        BlockPos[] positions = new BlockPos[total];
+        int lastX = 0, lastY = 0, lastZ = 0;
+        for (int i = 0; i < total; i++) {
+            lastX += readSigned(in);
+            lastY += readSigned(in);
+            lastZ += readSigned(in);
+            positions[i] = new BlockPos(lastX, lastY, lastZ);
+        }
+        TrackShape[] shapes = new TrackShape[readUnsigned(in)];
+        for (int i = 0; i < shapes.length; i++) {
+            shapes[i] = TrackShape.valueOf(in.readUTF());
+        }
+        int[] codes = new int[total];
+        for (int i = 0; i < total; i++) {
+            codes[i] = readUnsigned(in);
+        }
+        int[] lengths = new int[total];
+        for (int i = 0; i < total; i++) {
+            lengths[i] = version >= 3 ? readUnsigned(in) + 1 : 1;
+        }
+        int index = 0;
+        for (int c = 0; c < trackChunks.length; c++) {
+            List<TrackPutInfo> chunkTracks = new ArrayList<>(trackCounts[c]);
+            for (int i = 0; i < trackCounts[c]; i++, index++) {
+                TrackShape shape = shapes[codes[index] >>> 1];
+                if (lengths[index] > 1) {
+                    int step = in.readUnsignedByte();
+                    chunkTracks.add(new TrackPutInfo(positions[index], shape, null, null, lengths[index], step / 3 - 1, step % 3 - 1));
+                } else {
+                    chunkTracks.add(new TrackPutInfo(positions[index], shape, null, null));
+                }
+            }
+            railwayMap.trackMap.put(trackChunks[c], chunkTracks);
+        }
+        // 曲线参数 按铁轨顺序补到对应的铁轨上
+        index = 0;
+        for (int c = 0; c < trackChunks.length; c++) {
+            List<TrackPutInfo> chunkTracks = railwayMap.trackMap.get(trackChunks[c]);
+            for (int i = 0; i < chunkTracks.size(); i++, index++) {
+                if ((codes[index] & 1) == 0) continue;
+                TrackShape endShape = shapes[readUnsigned(in)];
+                TrackPutInfo.BezierInfo bezier = new TrackPutInfo.BezierInfo(readVec(in), readVec(in), readVec(in), readVec(in));
+                TrackPutInfo track = chunkTracks.get(i);
+                chunkTracks.set(i, new TrackPutInfo(track.pos(), track.shape(), bezier, endShape));
+            }
+        }
+
+        railwayMap.freeze();
+        return railwayMap;
+    }
+
+    // 区块按坐标排序 相邻区块的坐标差小
+    private static List<ChunkPos> sortedChunks(FrozenChunkMap<?> map) {
+        List<ChunkPos> chunks = new ArrayList<>(map.size());
+        map.forEach((chunkKey, values) -> chunks.add(new ChunkPos(chunkKey)));
+        chunks.sort(Comparator.<ChunkPos>comparingInt(pos -> pos.x).thenComparingInt(pos -> pos.z));
+        return chunks;
+    }
+
+    private static void writeChunks(DataOutputStream out, List<ChunkPos> chunks) throws IOException {
+        writeUnsigned(out, chunks.size());
+        int lastX = 0, lastZ = 0;
+        for (ChunkPos pos : chunks) {
+            writeSigned(out, pos.x - lastX);
+            writeSigned(out, pos.z - lastZ);
+            lastX = pos.x;
+            lastZ = pos.z;
+        }
+    }
+
+    private static ChunkPos[] readChunks(DataInputStream in) throws IOException {
+        ChunkPos[] chunks = new ChunkPos[readUnsigned(in)];
+        int lastX = 0, lastZ = 0;
+        for (int i = 0; i < chunks.length; i++) {
+            lastX += readSigned(in);
+            lastZ += readSigned(in);
+            chunks[i] = new ChunkPos(lastX, lastZ);
+        }
+        return chunks;
+    }
+
+    private static void writeVec(DataOutputStream out, Vec3 v) throws IOException {
+        out.writeDouble(v.x);
+        out.writeDouble(v.y);
+        out.writeDouble(v.z);
+    }
+
+    private static Vec3 readVec(DataInputStream in) throws IOException {
+        return new Vec3(in.readDouble(), in.readDouble(), in.readDouble());
+    }
+
+    // 变长整数 每字节7位
+    private static void writeUnsigned(DataOutputStream out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    private static int readUnsigned(DataInputStream in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0)
+                return value;
+        }
+        throw new IOException("Malformed varint");
+    }
+
+    // zigzag编码 绝对值小的负数也只占一两个字节
+    private static void writeSigned(DataOutputStream out, int value) throws IOException {
+        writeUnsigned(out, (value << 1) ^ (value >> 31));
+    }
+
+    private static int readSigned(DataInputStream in) throws IOException {
+        int value = readUnsigned(in);
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
@@ -0,0 +1,260 @@
+package com.hxzhitang.tongdarailway.railway;
+
+import net.minecraft.world.phys.Vec3;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.function.ToLongFunction;
+
+// 区域缓存 多张区域数据表共用一份内存预算
+// 每项按实际数组大小(或估算)计重，超出预算时从最久未访问的几项中淘汰离玩家最远的一项
+// 每张表是ConcurrentHashMap，读取不加锁，只记下该项最后被访问的时刻；只有放入时才检查预算并淘汰
+// 被淘汰的数据下次请求时重新计算，区域路线则从存档中读回
+public class RegionCache {
+    private static final int EVICTION_CANDIDATES = 8;   // 每次淘汰时比较的最久未访问项数
+    private static final double EVICTION_TARGET = 0.9;  // 一次淘汰到预算的九成 不必每次放入都整理
+
+    private final long budgetBytes;
+    private final Supplier<List<Vec3>> players;
+    private final List<Section<?, ?>> sections = new CopyOnWriteArrayList<>();
+    private final AtomicLong clock = new AtomicLong();          // 每次放入加一 读取时记为该项的访问时刻
+    private final AtomicLong residentBytes = new AtomicLong();
+    private final AtomicBoolean evicting = new AtomicBoolean();  // 同时只有一个线程在淘汰
+
+    // 统计信息
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+    private final LongAdder evictionCount = new LongAdder();
+
+    private static final class CachedValue<V> {
+        final V value;
+        final long weight;
+        volatile long accessed;
+
+        CachedValue(V value, long weight, long accessed) {
+            this.value = value;
+            this.weight = weight;
+            this.accessed = accessed;
+        }
+    }
+
+    // 淘汰时的候选项
+    private record Candidate(Section<?, ?> section, Object key, CachedValue<?> entry, long accessed) {
+    }
+
+    /**
+     * @param budgetBytes 内存预算
+     * @param players 玩家位置 淘汰时优先淘汰离玩家远的区域
+     */
+    public RegionCache(long budgetBytes, Supplier<List<Vec3>> players) {
+        this.budgetBytes = budgetBytes;
+        this.players = players;
+    }
+
+    /**
+     * 新建一张共用预算的表
+     * @param name 表名 用于统计信息
+     * @param weigher 每项占用的字节数 放入时计算一次
+     * @param locator 键所在的区域
+     */
+    public <K, V> Section<K, V> section(String name, ToLongFunction<V> weigher, Function<K, RegionPos> locator) {
+        Section<K, V> section = new Section<>(name, weigher, locator, true);
+        sections.add(section);
+        return section;
+    }
+
+    /**
+     * 新建一张不参与淘汰的表 占用计入预算，但其中的项只能由使用者移除
+     * 用于重新计算结果可能不同、必须保留到用完的数据
+     */
+    public <K, V> Section<K, V> pinnedSection(String name, ToLongFunction<V> weigher) {
+        Section<K, V> section = new Section<>(name, weigher, null, false);
+        sections.add(section);
+        return section;
+    }
+
+    public String getStatistics() {
+        StringBuilder sb = new StringBuilder(String.format("Region cache: resident=%.1f/%.1f MB, hits=%d, misses=%d, evictions=%d",
+                residentBytes.get() / 1048576.0, budgetBytes / 1048576.0, hitCount.sum(), missCount.sum(), evictionCount.sum()));
+        for (Section<?, ?> section : sections) {
+            sb.append(String.format(", %s=%d(%.1f MB)", section.name, section.values.size(), section.bytes.get() / 1048576.0));
+        }
+        return sb.toString();
+    }
+
+    // 超出预算时淘汰 刚放入的项不淘汰；已有线程在淘汰时直接返回，由它按最新的占用继续淘汰
+    private void evict(Section<?, ?> keepSection, Object keepKey) {
+        if (residentBytes.get() <= budgetBytes || !evicting.compareAndSet(false, true))
+            return;
+        try {
+            List<Candidate> candidates = new ArrayList<>();
+            for (Section<?, ?> section : sections) {
+                section.collect(candidates, keepSection == section ? keepKey : null);
+            }
+            candidates.sort(Comparator.comparingLong(Candidate::accessed));
+
+            List<Vec3> positions = players.get();
+            long target = (long) (budgetBytes * EVICTION_TARGET);
+            int from = 0;
+            while (residentBytes.get() > target && from < candidates.size()) {
+                // 最久未访问的几项中离玩家最远的
+                int to = Math.min(candidates.size(), from + EVICTION_CANDIDATES);
+                int victim = from;
+                double victimDistance = -1;
+                for (int i = from; i < to; i++) {
+                    Candidate candidate = candidates.get(i);
+                    double distance = candidate.section.distance(candidate.key, positions);
+                    if (distance > victimDistance) {
+                        victim = i;
+                        victimDistance = distance;
+                    }
+                }
+                Candidate candidate = candidates.get(victim);
+                candidates.set(victim, candidates.get(from));
+                from++;
+                if (candidate.section.removeEntry(candidate.key, candidate.entry))
+                    evictionCount.increment();
+            }
+        } finally {
+            evicting.set(false);
+        }
+    }
+
+    public final class Section<K, V> extends AbstractMap<K, V> {
+        private final String name;
+        private final ToLongFunction<V> weigher;
+        private final Function<K, RegionPos> locator;
+        private final boolean evictable;
+        private final Map<K, CachedValue<V>> values = new ConcurrentHashMap<>();
+        private final AtomicLong bytes = new AtomicLong();
+
+        private Section(String name, ToLongFunction<V> weigher, Function<K, RegionPos> locator, boolean evictable) {
+            this.name = name;
+            this.weigher = weigher;
+            this.locator = locator;
+            this.evictable = evictable;
+        }
+
+        @Override
+        public V get(Object key) {
+            CachedValue<V> entry = values.get(key);
+            if (entry == null) {
+                missCount.increment();
+                return null;
+            }
+            hitCount.increment();
+            touch(entry);
+            return entry.value;
+        }
+
+        /**
+         * 取值 不计入命中统计，也不算作访问
+         */
+        public V peek(Object key) {
+            CachedValue<V> entry = values.get(key);
+            return entry == null ? null : entry.value;
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return values.containsKey(key);
+        }
+
+        @Override
+        public V put(K key, V value) {
+            CachedValue<V> entry = newEntry(value);
+            CachedValue<V> old = values.put(key, entry);
+            added(entry.weight - (old == null ? 0 : old.weight));
+            evict(this, key);
+            return old == null ? null : old.value;
+        }
+
+        @Override
+        public V putIfAbsent(K key, V value) {
+            CachedValue<V> entry = newEntry(value);
+            CachedValue<V> old = values.putIfAbsent(key, entry);
+            if (old != null) {
+                touch(old);
+                return old.value;
+            }
+            added(entry.weight);
+            evict(this, key);
+            return null;
+        }
+
+        @Override
+        public V remove(Object key) {
+            CachedValue<V> old = values.remove(key);
+            if (old == null)
+                return null;
+            added(-old.weight);
+            return old.value;
+        }
+
+        @Override
+        public int size() {
+            return values.size();
+        }
+
+        @Override
+        public void clear() {
+            for (K key : values.keySet()) {
+                remove(key);
+            }
+        }
+
+        // 返回快照
+        @Override
+        public Set<Entry<K, V>> entrySet() {
+            Map<K, V> snapshot = new HashMap<>();
+            values.forEach((key, entry) -> snapshot.put(key, entry.value));
+            return Collections.unmodifiableMap(snapshot).entrySet();
+        }
+
+        private CachedValue<V> newEntry(V value) {
+            Objects.requireNonNull(value);
+            return new CachedValue<>(value, weigher.applyAsLong(value), clock.incrementAndGet());
+        }
+
+        private void touch(CachedValue<V> entry) {
+            // 两次放入之间的读取记为同一时刻 避免每次读取都写
+            long now = clock.get();
+            if (entry.accessed != now)
+                entry.accessed = now;
+        }
+
+        private void added(long delta) {
+            bytes.addAndGet(delta);
+            residentBytes.addAndGet(delta);
+        }
+
+        // 收集可淘汰的项
+        private void collect(List<Candidate> candidates, Object keep) {
+            if (!evictable)
+                return;
+            values.forEach((key, entry) -> {
+                if (!key.equals(keep))
+                    candidates.add(new Candidate(this, key, entry, entry.accessed));
+            });
+        }
+
+        // 只在该项未被替换时移除
+        private boolean removeEntry(Object key, CachedValue<?> entry) {
+            if (!values.remove(key, entry))
+                return false;
+            added(-entry.weight);
+            return true;
+        }
+
+        @SuppressWarnings("unchecked")
+        private double distance(Object key, List<Vec3> positions) {
+            return RegionPlanScheduler.distanceToNearestPlayer(locator.apply((K) key), positions);
+        }
+    }
+}
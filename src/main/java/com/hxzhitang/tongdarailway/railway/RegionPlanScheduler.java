@@ -0,0 +1,224 @@
+package com.hxzhitang.tongdarailway.railway;
+
+import com.hxzhitang.tongdarailway.Tongdarailway;
+import net.minecraft.world.phys.Vec3;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static com.hxzhitang.tongdarailway.Tongdarailway.CHUNK_GROUP_SIZE;
+
+// 区域规划调度 按优先级从等待队列中取出区域规划任务
+// 优先级: 有区块生成线程阻塞等待的区域 > 离玩家最近的区域 > 先提交的区域
+// 区域规划在自己的线程中进行，只负责请求各阶段并等待结果；各阶段的计算在规划线程池中进行，池内线程不会被等待占住
+public class RegionPlanScheduler {
+    private static final AtomicInteger threadCount = new AtomicInteger();
+
+    private final int maxRunning;   // 同时进行的区域规划数
+    private final int maxQueued;    // 预取任务的最大排队数
+    private final ThreadPoolExecutor executor;
+
+    private final Map<RegionPos, PlanRequest> queued = new HashMap<>();
+    private final Map<RegionPos, PlanRequest> running = new HashMap<>();
+    private volatile List<Vec3> playerPositions = List.of();
+    private long sequence = 0;
+
+    // 统计信息
+    private long rejectedCount = 0;
+    private long cancelledCount = 0;
+
+    public RegionPlanScheduler(int maxRunning, int maxQueued) {
+        this.maxRunning = Math.max(1, maxRunning);
+        this.maxQueued = Math.max(1, maxQueued);
+        // 同时进行的规划数由dispatch控制 线程空闲一段时间后退出
+        this.executor = new ThreadPoolExecutor(this.maxRunning, this.maxRunning, 30, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), runnable -> {
+            Thread thread = new Thread(runnable, "TongDaRailway-Region-" + threadCount.getAndIncrement());
+            thread.setDaemon(true);
+            // 模组类加载器 避免线程找不到模组类
+            thread.setContextClassLoader(RegionPlanScheduler.class.getClassLoader());
+            return thread;
+        });
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * 提交区域规划
+     * @param regionPos 区域坐标
+     * @param blocking 是否来自区块生成 区块生成的请求不受排队数限制
+     * @param plan 规划任务
+     * @return 规划任务的结果 如果队列已满则拒绝预取任务并返回null
+     */
+    @SuppressWarnings("unchecked")
+    public synchronized <T> CompletableFuture<T> submit(RegionPos regionPos, boolean blocking, Supplier<T> plan) {
+        PlanRequest request = running.get(regionPos);
+        if (request != null) {
+            return (CompletableFuture<T>) request.future;
+        }
+
+        request = queued.get(regionPos);
+        if (request != null) {
+            return (CompletableFuture<T>) request.future;
+        }
+
+        // 背压 队列满时拒绝预取，区块生成的请求总是接受
+        if (!blocking && queued.size() >= maxQueued) {
+            rejectedCount++;
+            return null;
+        }
+
+        request = new PlanRequest(regionPos, plan, sequence++);
+        queued.put(regionPos, request);
+        dispatch();
+        return (CompletableFuture<T>) request.future;
+    }
+
+    /**
+     * 有线程开始阻塞等待该区域 排队中的任务会被提前，且不会被取消
+     * 等待结束后须调用unmarkBlocking
+     */
+    public synchronized void markBlocking(RegionPos regionPos) {
+        PlanRequest request = queued.get(regionPos);
+        if (request != null)
+            request.waiters++;
+    }
+
+    /**
+     * 阻塞等待该区域的线程不再等待
+     */
+    public synchronized void unmarkBlocking(RegionPos regionPos) {
+        PlanRequest request = queued.get(regionPos);
+        if (request != null && request.waiters > 0)
+            request.waiters--;
+    }
+
+    /**
+     * 更新玩家位置，用于计算排队任务的优先级
+     */
+    public void updatePlayers(List<Vec3> positions) {
+        playerPositions = List.copyOf(positions);
+    }
+
+    /**
+     * 取消不再需要的预取任务
+     * @param wanted 仍需要的区域
+     * @return 取消的任务数
+     */
+    public synchronized int retainPrefetches(Set<RegionPos> wanted) {
+        int count = 0;
+        Iterator<PlanRequest> iterator = queued.values().iterator();
+        while (iterator.hasNext()) {
+            PlanRequest request = iterator.next();
+            if (request.waiters == 0 && !wanted.contains(request.regionPos)) {
+                iterator.remove();
+                request.future.cancel(false);
+                count++;
+            }
+        }
+        cancelledCount += count;
+        return count;
+    }
+
+    /**
+     * 取消排队中的区域规划 已经开始或有线程等待的任务不会被取消
+     */
+    public synchronized boolean cancel(RegionPos regionPos) {
+        PlanRequest request = queued.get(regionPos);
+        if (request == null || request.waiters > 0)
+            return false;
+        queued.remove(regionPos);
+        request.future.cancel(false);
+        cancelledCount++;
+        return true;
+    }
+
+    public List<Vec3> getPlayerPositions() {
+        return playerPositions;
+    }
+
+    public synchronized String getStatistics() {
+        return String.format("Region plans: running=%d, queued=%d, rejected=%d, cancelled=%d",
+                running.size(), queued.size(), rejectedCount, cancelledCount);
+    }
+
+    // 在空闲的位置上启动优先级最高的任务 需持有锁
+    private void dispatch() {
+        while (running.size() < maxRunning && !queued.isEmpty()) {
+            PlanRequest next = pollBest();
+            running.put(next.regionPos, next);
+            executor.execute(() -> run(next));
+        }
+    }
+
+    private PlanRequest pollBest() {
+        List<Vec3> players = playerPositions;
+        PlanRequest best = null;
+        double bestDistance = 0;
+        for (PlanRequest request : queued.values()) {
+            double distance = distanceToNearestPlayer(request.regionPos, players);
+            if (best == null || compare(request, distance, best, bestDistance) < 0) {
+                best = request;
+                bestDistance = distance;
+            }
+        }
+        queued.remove(best.regionPos);
+        return best;
+    }
+
+    private static int compare(PlanRequest a, double distanceA, PlanRequest b, double distanceB) {
+        boolean blockingA = a.waiters > 0;
+        boolean blockingB = b.waiters > 0;
+        if (blockingA != blockingB)
+            return blockingA ? -1 : 1;
+        int c = Double.compare(distanceA, distanceB);
+        if (c != 0)
+            return c;
+        return Long.compare(a.sequence, b.sequence);
+    }
+
+    private void run(PlanRequest request) {
+        try {
+            request.future.complete(request.plan.get());
+        } catch (Throwable e) {
+            Tongdarailway.LOGGER.error("Region {} planning failed: ", request.regionPos, e);
+            request.future.completeExceptionally(e);
+        } finally {
+            synchronized (this) {
+                running.remove(request.regionPos);
+                dispatch();
+            }
+        }
+    }
+
+    static double distanceToNearestPlayer(RegionPos regionPos, List<Vec3> players) {
+        if (players.isEmpty())
+            return 0;
+        double centerX = (regionPos.x() + 0.5) * CHUNK_GROUP_SIZE * 16;
+        double centerZ = (regionPos.z() + 0.5) * CHUNK_GROUP_SIZE * 16;
+        double min = Double.MAX_VALUE;
+        for (Vec3 p : players) {
+            double dx = p.x - centerX;
+            double dz = p.z - centerZ;
+            min = Math.min(min, dx * dx + dz * dz);
+        }
+        return Math.sqrt(min);
+    }
+
+    private static class PlanRequest {
+        final RegionPos regionPos;
+        final Supplier<?> plan;
+        final long sequence;
+        final CompletableFuture<Object> future = new CompletableFuture<>();
+        int waiters = 0;   // 阻塞等待的线程数 需持有调度器的锁
+
+        PlanRequest(RegionPos regionPos, Supplier<?> plan, long sequence) {
+            this.regionPos = regionPos;
+            this.plan = plan;
+            this.sequence = sequence;
+        }
+    }
+}
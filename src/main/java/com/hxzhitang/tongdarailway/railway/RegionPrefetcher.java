@@ -0,0 +1,141 @@
+package com.hxzhitang.tongdarailway.railway;
+
+import com.hxzhitang.tongdarailway.Config;
+import com.hxzhitang.tongdarailway.Tongdarailway;
+import net.minecraft.core.BlockPos;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.server.level.ServerLevel;
+import net.minecraft.server.level.ServerPlayer;
+import net.minecraft.world.phys.Vec3;
+import net.neoforged.bus.api.SubscribeEvent;
+import net.neoforged.fml.common.EventBusSubscriber;
+import net.neoforged.neoforge.event.server.ServerStartingEvent;
+import net.neoforged.neoforge.event.server.ServerStoppedEvent;
+import net.neoforged.neoforge.event.tick.ServerTickEvent;
+
+import java.util.*;
+
+import static com.hxzhitang.tongdarailway.Tongdarailway.CHUNK_GROUP_SIZE;
+
+// 区域预取 根据玩家位置和速度提前规划玩家即将进入的区域，避免区块生成时阻塞等待
+@EventBusSubscriber(modid = Tongdarailway.MODID)
+public class RegionPrefetcher {
+    private static final int SCAN_INTERVAL = 20;        // 每隔多少tick扫描一次玩家
+    private static final double MAX_PLAYER_SPEED = 4;   // 每tick最大移动距离 超过视为传送
+    private static final double MIN_PLAYER_SPEED = 0.1; // 每tick最小移动距离 低于视为静止
+
+    // 只在服务器主线程访问
+    private static final Map<UUID, Vec3> lastPositions = new HashMap<>();
+    private static int tickCounter = 0;
+
+    @SubscribeEvent
+    static void onServerStarting(ServerStartingEvent event) {
+        if (!Config.enableRegionPrefetch)
+            return;
+        ServerLevel level = event.getServer().getLevel(ServerLevel.OVERWORLD);
+        if (level == null)
+            return;
+
+        // 预取世界出生点附近的区域
+        RailwayBuilder builder = RailwayBuilder.getInstance(level.getSeed(), level);
+        BlockPos spawn = level.getSharedSpawnPos();
+        Set<RegionPos> regions = new LinkedHashSet<>();
+        collectRegionsAround(regions, Vec3.atCenterOf(spawn), getChunkRadius(event.getServer()));
+        regions.forEach(builder::prefetchRailway);
+        Tongdarailway.LOGGER.info("Prefetching {} railway regions around world spawn", regions.size());
+    }
+
+    @SubscribeEvent
+    static void onServerStopped(ServerStoppedEvent event) {
+        lastPositions.clear();
+        tickCounter = 0;
+    }
+
+    @SubscribeEvent
+    static void onServerTick(ServerTickEvent.Post event) {
+        if (!Config.enableRegionPrefetch)
+            return;
+        if (++tickCounter % SCAN_INTERVAL != 0)
+            return;
+        MinecraftServer server = event.getServer();
+        ServerLevel level = server.getLevel(ServerLevel.OVERWORLD);
+        if (level == null)
+            return;
+
+        List<ServerPlayer> players = level.players();
+        if (players.isEmpty()) {
+            lastPositions.clear();
+            return;
+        }
+
+        int chunkRadius = getChunkRadius(server);
+        Set<UUID> online = new HashSet<>();
+        List<Vec3> positions = new ArrayList<>();
+        Set<RegionPos> regions = new LinkedHashSet<>();
+        for (ServerPlayer player : players) {
+            if (player.isSpectator())
+                continue;
+            online.add(player.getUUID());
+            Vec3 pos = player.position();
+            positions.add(pos);
+            Vec3 last = lastPositions.put(player.getUUID(), pos);
+
+            // 当前位置附近的区域
+            collectRegionsAround(regions, pos, chunkRadius);
+
+            if (last == null)
+                continue;
+            // 每tick的水平速度
+            Vec3 velocity = pos.subtract(last).multiply(1, 0, 1).scale(1.0 / SCAN_INTERVAL);
+            double speed = velocity.length();
+            if (speed < MIN_PLAYER_SPEED || speed > MAX_PLAYER_SPEED)
+                continue;
+
+            // 沿预测的移动路线每隔半个区域取一个点
+            double lookahead = speed * Config.prefetchLookaheadSeconds * 20;
+            double step = CHUNK_GROUP_SIZE * 16 / 2.0;
+            Vec3 dir = velocity.normalize();
+            for (double d = step; d <= lookahead; d += step) {
+                collectRegionsAround(regions, pos.add(dir.scale(d)), chunkRadius);
+            }
+            collectRegionsAround(regions, pos.add(dir.scale(lookahead)), chunkRadius);
+        }
+        lastPositions.keySet().retainAll(online);
+
+        if (positions.isEmpty())
+            return;
+        RailwayBuilder builder = RailwayBuilder.getInstance(level.getSeed(), level);
+        // 更新调度器中的玩家位置 取消已经没有玩家前往的预取
+        RegionPlanScheduler scheduler = builder.getScheduler();
+        scheduler.updatePlayers(positions);
+        int cancelled = scheduler.retainPrefetches(regions);
+        if (cancelled > 0)
+            Tongdarailway.LOGGER.debug("Cancelled {} railway region prefetches. {} {}", cancelled, scheduler.getStatistics(), builder.getCache().getStatistics());
+        regions.forEach(builder::prefetchRailway);
+    }
+
+    /**
+     * 收集一个点周围区块生成范围所涉及的区域
+     * @param regions 区域集合
+     * @param pos 世界坐标
+     * @param chunkRadius 区块半径
+     */
+    private static void collectRegionsAround(Set<RegionPos> regions, Vec3 pos, int chunkRadius) {
+        int cx = Math.floorDiv((int) Math.floor(pos.x), 16);
+        int cz = Math.floorDiv((int) Math.floor(pos.z), 16);
+        int minRx = Math.floorDiv(cx - chunkRadius, CHUNK_GROUP_SIZE);
+        int maxRx = Math.floorDiv(cx + chunkRadius, CHUNK_GROUP_SIZE);
+        int minRz = Math.floorDiv(cz - chunkRadius, CHUNK_GROUP_SIZE);
+        int maxRz = Math.floorDiv(cz + chunkRadius, CHUNK_GROUP_SIZE);
+        for (int rx = minRx; rx <= maxRx; rx++) {
+            for (int rz = minRz; rz <= maxRz; rz++) {
+                regions.add(new RegionPos(rx, rz));
+            }
+        }
+    }
+
+    // 区块生成范围 视距外加上世界生成需要的边缘
+    private static int getChunkRadius(MinecraftServer server) {
+        return server.getPlayerList().getViewDistance() + 2;
+    }
+}
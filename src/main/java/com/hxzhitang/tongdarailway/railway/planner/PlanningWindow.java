@@ -0,0 +1,194 @@
+package com.hxzhitang.tongdarailway.railway.planner;
+
+import com.hxzhitang.tongdarailway.Config;
+import com.hxzhitang.tongdarailway.railway.RailwayMap;
+import com.hxzhitang.tongdarailway.railway.RegionPos;
+import com.hxzhitang.tongdarailway.util.CoarseToFinePathfinder;
+import com.hxzhitang.tongdarailway.util.HierarchicalPathfinder;
+import com.hxzhitang.tongdarailway.util.LandmarkHeuristic;
+import com.hxzhitang.tongdarailway.util.PlannerPool;
+import com.hxzhitang.tongdarailway.util.TiledGrid;
+
+import java.util.BitSet;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static com.hxzhitang.tongdarailway.Tongdarailway.CHUNK_GROUP_SIZE;
+import static com.hxzhitang.tongdarailway.railway.RailwayMap.samplingNum;
+
+// 寻路窗口 以一个区域为中心的十字形损耗图，以及由它得到的、可被该区域规划的所有连接复用的寻路数据
+public class PlanningWindow {
+    public final RegionPos regionPos;
+    public final TiledGrid costMap;           // 高度损耗图 五个区域高度图的视图
+    public final TiledGrid structureCostMap;  // 结构损耗图 五个区域结构图的视图
+    private final int[] baseCosts;          // 与具体连接无关的附加损耗 低海拔 + 结构
+    private final Map<Long, float[]> sharedClusters;  // 各窗口共享的簇内代价
+    private volatile HierarchicalPathfinder hierarchy;
+    private final AtomicReference<CompletableFuture<LandmarkHeuristic>> landmarks = new AtomicReference<>();
+    private volatile CoarseToFinePathfinder coarse;
+
+    public PlanningWindow(RegionPos regionPos, TiledGrid costMap, TiledGrid structureCostMap, int seaLevel, Map<Long, float[]> sharedClusters) {
+        this.regionPos = regionPos;
+        this.costMap = costMap;
+        this.structureCostMap = structureCostMap;
+        this.sharedClusters = sharedClusters;
+
+        int rows = costMap.rows();
+        int cols = costMap.cols();
+        baseCosts = new int[rows * cols];
+        for (int x = 0; x < rows; x++) {
+            int base = x * cols;
+            for (int z = 0; z < cols; z++) {
+                int heightLimit = costMap.get(x, z) < seaLevel+2 ? 100 : 0;
+                baseCosts[base + z] = heightLimit + structureCostMap.get(x, z);
+            }
+        }
+    }
+
+    /**
+     * 估算占用的内存 用于区域缓存的预算
+     * 包括之后按需构建的地标距离和降采样图，以及引用的区域高度图、结构图
+     * 这些区域图还在缓存中时会重复计算，预算偏保守；被淘汰后仍被窗口引用时也不会漏算
+     */
+    public long estimateBytes() {
+        long cells = (long) costMap.rows() * costMap.cols();
+        long bytes = 256 + cells * 4;   // baseCosts
+        bytes += cells * 4 * Math.max(0, Config.pathSearchLandmarks);
+        int factor = Math.max(2, Config.pathSearchCoarseFactor);
+        bytes += cells * 4 / ((long) factor * factor);
+        bytes += costMap.estimateBytes() + structureCostMap.estimateBytes();
+        return bytes;
+    }
+
+    /**
+     * 合并寻路的附加损耗 限制区域 + 低海拔 + 结构
+     * @return 按格子编号(x * cols + z)索引的附加损耗 每次调用返回新数组
+     */
+    public int[] getAdditionalCosts(int[] picStart, int[] picEnd) {
+        int rows = costMap.rows();
+        int cols = costMap.cols();
+        BitSet scope = RailwayMap.scopeMask(rows, cols, picStart, picEnd);
+        int[] costs = baseCosts.clone();
+        for (int i = scope.nextClearBit(0); i < costs.length; i = scope.nextClearBit(i + 1)) {
+            costs[i] += RailwayMap.SCOPE_MAX_COST;
+        }
+        return costs;
+    }
+
+    /**
+     * 分层寻路的抽象图 第一次使用时构建
+     */
+    public HierarchicalPathfinder getHierarchy() {
+        HierarchicalPathfinder h = hierarchy;
+        if (h == null) {
+            synchronized (this) {
+                h = hierarchy;
+                if (h == null) {
+                    h = new HierarchicalPathfinder(costMap, baseCosts, this::clusterKey, sharedClusters);
+                    hierarchy = h;
+                }
+            }
+        }
+        return h;
+    }
+
+    /**
+     * 降采样的高度图 第一次使用时构建
+     */
+    public CoarseToFinePathfinder getCoarse() {
+        CoarseToFinePathfinder c = coarse;
+        if (c == null || c.getFactor() != Config.pathSearchCoarseFactor) {
+            synchronized (this) {
+                c = coarse;
+                if (c == null || c.getFactor() != Config.pathSearchCoarseFactor) {
+                    c = new CoarseToFinePathfinder(costMap, Config.pathSearchCoarseFactor);
+                    coarse = c;
+                }
+            }
+        }
+        return c;
+    }
+
+    /**
+     * 请求地标启发函数 第一次请求时在线程池中计算，之后的请求共用同一个future
+     * 未开启时结果为null
+     */
+    public CompletableFuture<LandmarkHeuristic> requestLandmarks() {
+        if (Config.pathSearchLandmarks <= 0)
+            return CompletableFuture.completedFuture(null);
+        CompletableFuture<LandmarkHeuristic> future = landmarks.get();
+        if (future != null)
+            return future;
+        CompletableFuture<LandmarkHeuristic> created = new CompletableFuture<>();
+        future = landmarks.compareAndExchange(null, created);
+        if (future != null)
+            return future;
+        CompletableFuture.supplyAsync(() -> LandmarkHeuristic.compute(costMap, baseCosts, selectLandmarks(Config.pathSearchLandmarks)), PlannerPool.get())
+                .whenComplete((result, e) -> {
+                    if (e != null) {
+                        // 下次请求时重新计算
+                        landmarks.compareAndSet(created, null);
+                        created.completeExceptionally(e);
+                    } else {
+                        created.complete(result);
+                    }
+                });
+        return created;
+    }
+
+    /**
+     * 地标启发函数 requestLandmarks完成后才有值，不阻塞
+     * @return 未开启或还没算完时返回null
+     */
+    public LandmarkHeuristic getLandmarks() {
+        if (Config.pathSearchLandmarks <= 0)
+            return null;
+        CompletableFuture<LandmarkHeuristic> future = landmarks.get();
+        return future == null ? null : future.getNow(null);
+    }
+
+    // 地标放在十字形四条臂的末端 先取各臂末端的中点，再取两侧
+    private int[] selectLandmarks(int count) {
+        int size = CHUNK_GROUP_SIZE * samplingNum;
+        int last = costMap.rows() - 1;
+        int cols = costMap.cols();
+        int[][] candidates = {
+                {0, size + size / 2}, {last, size + size / 2}, {size + size / 2, 0}, {size + size / 2, last},
+                {0, size + size / 6}, {last, size + size * 5 / 6}, {size + size * 5 / 6, 0}, {size + size / 6, last}
+        };
+        int[] landmarks = new int[Math.min(count, candidates.length)];
+        for (int i = 0; i < landmarks.length; i++) {
+            landmarks[i] = candidates[i][0] * cols + candidates[i][1];
+        }
+        return landmarks;
+    }
+
+    /**
+     * 簇内代价的键所在的区域
+     */
+    public static RegionPos clusterRegion(long key) {
+        int clustersPerRegion = Math.max(1, CHUNK_GROUP_SIZE * samplingNum / HierarchicalPathfinder.CLUSTER_SIZE);
+        int gx = (int) (key >> 32);
+        int gz = (int) key;
+        return new RegionPos(Math.floorDiv(gx, clustersPerRegion), Math.floorDiv(gz, clustersPerRegion));
+    }
+
+    // 簇在世界中的标识 簇内代价只取决于所在区域的地形和结构，完整落在十字形中某个区域内的簇可被其他窗口复用
+    private long clusterKey(int cluster) {
+        int size = CHUNK_GROUP_SIZE * samplingNum;
+        int clusterSize = HierarchicalPathfinder.CLUSTER_SIZE;
+        if (size % clusterSize != 0)
+            return -1;
+        int clusterCols = (costMap.cols() + clusterSize - 1) / clusterSize;
+        int cx = cluster / clusterCols;
+        int cz = cluster % clusterCols;
+        int tileX = cx * clusterSize / size;
+        int tileZ = cz * clusterSize / size;
+        if (tileX != 1 && tileZ != 1)
+            return -1;  // 四角没有区域数据
+        long gx = (long) (regionPos.x() - 1) * (size / clusterSize) + cx;
+        long gz = (long) (regionPos.z() - 1) * (size / clusterSize) + cz;
+        return (gx << 32) ^ (gz & 0xFFFFFFFFL);
+    }
+}
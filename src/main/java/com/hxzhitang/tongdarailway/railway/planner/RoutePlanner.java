@@ -1,7 +1,9 @@
 package com.hxzhitang.tongdarailway.railway.planner;
 
+import com.hxzhitang.tongdarailway.Config;
 import com.hxzhitang.tongdarailway.Tongdarailway;
 import com.hxzhitang.tongdarailway.railway.RailwayBuilder;
+import com.hxzhitang.tongdarailway.railway.RailwayMap;
 import com.hxzhitang.tongdarailway.railway.RegionPos;
 import com.hxzhitang.tongdarailway.structure.TrackPutInfo;
 import com.hxzhitang.tongdarailway.util.*;
@@ -9,181 +11,120 @@ import net.createmod.catnip.math.AngleHelper;
 import net.createmod.catnip.math.VecHelper;
 import net.minecraft.core.BlockPos;
 import net.minecraft.core.Direction;
-import net.minecraft.core.registries.Registries;
 import net.minecraft.server.level.ServerLevel;
-import net.minecraft.server.level.WorldGenRegion;
 import net.minecraft.util.Mth;
 import net.minecraft.world.level.ChunkPos;
-import net.minecraft.world.level.LevelHeightAccessor;
 import net.minecraft.world.level.chunk.ChunkGenerator;
-import net.minecraft.world.level.chunk.ProtoChunk;
-import net.minecraft.world.level.chunk.UpgradeData;
 import net.minecraft.world.level.levelgen.Heightmap;
 import net.minecraft.world.level.levelgen.RandomState;
 import net.minecraft.world.phys.Vec3;
 
 import java.util.*;
-import java.util.concurrent.CountDownLatch;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+import java.util.function.IntFunction;
 import java.util.stream.Collectors;
 
 import static com.hxzhitang.tongdarailway.Tongdarailway.CHUNK_GROUP_SIZE;
 import static com.hxzhitang.tongdarailway.Tongdarailway.HEIGHT_MAX_INCREMENT;
 import static com.hxzhitang.tongdarailway.railway.RailwayMap.samplingNum;
 
-// Ѱ· ·
+// 寻路 生成路径曲线
 public class RoutePlanner {
+    // 连接的寻路方式
+    public enum SearchMode {
+        DIRECT,         // 整个窗口按原分辨率寻路
+        HIERARCHICAL,   // 先在簇的抽象图上寻路 再在经过的簇内精细寻路
+        BIDIRECTIONAL,  // 从两个车站同时寻路 在中间相遇
+        COARSE_TO_FINE  // 先在降采样的图上寻路 再在粗路线附近精细寻路
+    }
+
+    public static final int STRUCTURE_COST = 500;   // 结构附近格子的附加损耗
+
     private final RegionPos regionPos;
 
     public RoutePlanner(RegionPos regionPos) {
         this.regionPos = regionPos;
     }
 
-    // ʮͼ
-    public int[][] getCostMap(WorldGenRegion level) {
-        int[][] heightMap = new int[CHUNK_GROUP_SIZE*samplingNum*3][CHUNK_GROUP_SIZE*samplingNum*3];
-        for (int[] ints : heightMap) {
-            Arrays.fill(ints, 50000);
-        }
-        for (int i = -1; i < 2; i++) {
-            for (int j = -1; j < 2; j++) {
-                if (Math.abs(i) == 1 && Math.abs(j) == 1)
-                    continue;
-                RegionPos rPos = new RegionPos(regionPos.x() + i, regionPos.z() + j);
-                RailwayBuilder builder = RailwayBuilder.getInstance(level.getSeed());
-                int[][] map;
-                if (builder != null) {
-                    map = builder.regionHeightMap
-                            .computeIfAbsent(rPos, k -> getHeightMap(level.getLevel(), rPos));
-                } else {
-                    map = getHeightMap(level.getLevel(), rPos);
-                }
-                for (int x = 0; x < map.length; x++) {
-                    for (int z = 0; z < map[0].length; z++) {
-                        int picX = (i+1)*CHUNK_GROUP_SIZE*samplingNum+x;
-                        int picZ = (j+1)*CHUNK_GROUP_SIZE*samplingNum+z;
-                        heightMap[picX][picZ] = map[x][z];
-                    }
-                }
-            }
-        }
+    // 获得十字形四向区域的损耗图
+    public CompletableFuture<TiledGrid> requestCostMap(ServerLevel level) {
+        RailwayBuilder builder = RailwayBuilder.getInstance(level.getSeed());
+        return requestCross(rPos -> builder != null
+                ? builder.requestHeightMap(rPos)
+                : CompletableFuture.supplyAsync(() -> getHeightMap(level, rPos), PlannerPool.get()), short[][]::new)
+                .thenApply(tiles -> TiledGrid.ofShorts(CHUNK_GROUP_SIZE*samplingNum, 3, 3, tiles, level.getMinBuildHeight()));
+    }
 
-        return heightMap;
+    // 获得十字形四向区域的结构损耗图
+    public CompletableFuture<TiledGrid> requestStructureCostMap(ServerLevel level) {
+        RailwayBuilder builder = RailwayBuilder.getInstance(level.getSeed());
+        return requestCross(rPos -> builder != null
+                ? builder.requestStructureMap(rPos)
+                : CompletableFuture.supplyAsync(() -> getStructureMap(level, rPos), PlannerPool.get()), long[][]::new)
+                .thenApply(tiles -> TiledGrid.ofBits(CHUNK_GROUP_SIZE*samplingNum, 3, 3, tiles, STRUCTURE_COST));
     }
 
-    // ʮĽṹͼ
-    public int[][] getStructureCostMap(WorldGenRegion level) {
-        int[][] structureMap = new int[CHUNK_GROUP_SIZE*samplingNum*3][CHUNK_GROUP_SIZE*samplingNum*3];
-        for (int[] ints : structureMap) {
-            Arrays.fill(ints, 50000);
-        }
+    // 先请求五个区域的图 全部完成后按3x3排列 四角为null
+    // 相邻区域正在计算的图会被复用而不是重复计算
+    private <T> CompletableFuture<T[]> requestCross(Function<RegionPos, CompletableFuture<T>> request, IntFunction<T[]> newArray) {
+        Map<RegionPos, CompletableFuture<T>> futures = new LinkedHashMap<>();
         for (int i = -1; i < 2; i++) {
             for (int j = -1; j < 2; j++) {
                 if (Math.abs(i) == 1 && Math.abs(j) == 1)
                     continue;
                 RegionPos rPos = new RegionPos(regionPos.x() + i, regionPos.z() + j);
-                RailwayBuilder builder = RailwayBuilder.getInstance(level.getSeed());
-                int[][] map;
-                if (builder != null) {
-                    map = builder.regionStructureMap
-                            .computeIfAbsent(rPos, k -> getStructureMap(level,rPos));
-                } else {
-                    map = getStructureMap(level,rPos);
-                }
-                for (int x = 0; x < map.length; x++) {
-                    for (int z = 0; z < map[0].length; z++) {
-                        int picX = (i+1)*CHUNK_GROUP_SIZE*samplingNum+x;
-                        int picZ = (j+1)*CHUNK_GROUP_SIZE*samplingNum+z;
-                        structureMap[picX][picZ] = map[x][z];
-                    }
-                }
+                futures.put(rPos, request.apply(rPos));
             }
         }
 
-        return structureMap;
+        return CompletableFuture.allOf(futures.values().toArray(new CompletableFuture[0])).thenApply(v -> {
+            T[] tiles = newArray.apply(9);
+            futures.forEach((rPos, future) -> {
+                int i = rPos.x() - regionPos.x();
+                int j = rPos.z() - regionPos.z();
+                tiles[(i+1)*3 + (j+1)] = future.join();
+            });
+            return tiles;
+        });
     }
 
-    private int[][] getHeightMap(ServerLevel serverLevel, RegionPos regionPos) {
-        // ߶Ӧθ߶ͼ
+    // 区域高度图 相对世界最低建筑高度 按 x * size + z 展平
+    public static short[] getHeightMap(ServerLevel serverLevel, RegionPos regionPos) {
+        // 高度自适应采样地形高度图
         ChunkGenerator gen = serverLevel.getChunkSource().getGenerator();
         RandomState cfg = serverLevel.getChunkSource().randomState();
 
-        // ֵ=10=3ÿڵ4x4
+        // 创建采样器：阈值=10，最大层数=3，每个节点4x4采样
         AdaptiveHeightSampler sampler = new AdaptiveHeightSampler(10, 3, 4, (x, z) -> {
             int wx = (int) (x*(16.0/samplingNum) + regionPos.x()*CHUNK_GROUP_SIZE*16);
             int wz = (int) (z*(16.0/samplingNum) + regionPos.z()*CHUNK_GROUP_SIZE*16);
             return gen.getBaseHeight(wx, wz, Heightmap.Types.WORLD_SURFACE_WG, serverLevel, cfg);
         });
 
-        try {
-            long startTime = System.currentTimeMillis();
-            // ĲС
-            sampler.buildQuadTree(CHUNK_GROUP_SIZE*samplingNum);
-            long endTime = System.currentTimeMillis();
-//            sampler.printStatistics();
-//            Tongdarailway.LOGGER.info(" Build HeightMap time: {}ms", endTime - startTime);
-        } catch (InterruptedException e) {
-            Tongdarailway.LOGGER.error(e.getMessage());
-        } finally {
-            sampler.shutdown();
-        }
+        long startTime = System.currentTimeMillis();
+        // 构建四叉树，区域大小
+        sampler.buildQuadTree(CHUNK_GROUP_SIZE*samplingNum);
+        long endTime = System.currentTimeMillis();
+//        sampler.printStatistics();
+//        Tongdarailway.LOGGER.info(" Build HeightMap time: {}ms", endTime - startTime);
 
-        int[][] heightMap = sampler.generateImage(CHUNK_GROUP_SIZE*samplingNum, CHUNK_GROUP_SIZE*samplingNum);
+        short[] heightMap = sampler.generateCompactImage(CHUNK_GROUP_SIZE*samplingNum, CHUNK_GROUP_SIZE*samplingNum, serverLevel.getMinBuildHeight());
 
         return heightMap;
     }
 
-    private int[][] getStructureMap(WorldGenRegion level, RegionPos regionPos) {
-        // ż
-        var serverLevel = level.getLevel();
-        var registryAccess = level.registryAccess();
-        var chunkGeneratorStructureState = serverLevel.getChunkSource().getGeneratorState();
-        var structureManager = serverLevel.structureManager();
-        var structureFeatureManager = serverLevel.getStructureManager();
-
-        var dimensionType = level.dimensionType();
-        LevelHeightAccessor levelHeightAccessor = LevelHeightAccessor.create(dimensionType.minY(), dimensionType.height());
-        var biomeRegistry = registryAccess.registryOrThrow(Registries.BIOME);
-
+    // 区域结构图 结构附近的格子置位 按 x * size + z 编号
+    public static long[] getStructureMap(ServerLevel level, RegionPos regionPos) {
+        // 计算遗迹 只验证放置规则允许的候选区块
+        StructureProber prober = new StructureProber(level);
         List<BlockPos> structurePos = new ArrayList<>();
-
-        try(ExecutorService executor = Executors.newFixedThreadPool(16)) {
-            // ̳߳
-            CountDownLatch latch = new CountDownLatch(CHUNK_GROUP_SIZE * CHUNK_GROUP_SIZE);
-            for (int gx = 0; gx < CHUNK_GROUP_SIZE; gx++) {
-                for (int gz = 0; gz < CHUNK_GROUP_SIZE; gz++) {
-                    int finalGx = gx;
-                    int finalGz = gz;
-                    executor.execute(() -> {
-                        try {
-                            // ִ
-                            var protoChunk = new ProtoChunk(new ChunkPos(regionPos.x() * CHUNK_GROUP_SIZE + finalGx, regionPos.z() * CHUNK_GROUP_SIZE + finalGz), UpgradeData.EMPTY, levelHeightAccessor, biomeRegistry, null);
-                            //ż
-                            serverLevel.getChunkSource().getGenerator().createStructures(registryAccess, chunkGeneratorStructureState, structureManager, protoChunk, structureFeatureManager);
-                            var res = protoChunk.getAllStarts();
-//                            var structureRegistry = registryAccess.registryOrThrow(Registries.STRUCTURE);
-                            res.forEach((key, value) -> {
-//                                String structureName = Objects.requireNonNull(structureRegistry.getKey(key)).toString();
-                                BlockPos pos = new BlockPos(protoChunk.getPos().x * 16, 0, protoChunk.getPos().z * 16);
-                                structurePos.add(pos);
-                            });
-                        } finally {
-                            latch.countDown();
-                        }
-                    });
-                }
-            }
-
-            // ȴ
-            latch.await();
-            // ر̳߳
-            executor.shutdown();
-        } catch (InterruptedException e) {
-            Tongdarailway.LOGGER.error("Search Feature Err: ", e);
+        for (ChunkPos chunkPos : prober.findStructureStarts(regionPos)) {
+            structurePos.add(new BlockPos(chunkPos.x * 16, 0, chunkPos.z * 16));
         }
 
-        int[][] costMap = new int[CHUNK_GROUP_SIZE*samplingNum][CHUNK_GROUP_SIZE*samplingNum];
+        int size = CHUNK_GROUP_SIZE*samplingNum;
+        long[] costMap = TiledGrid.newBitTile(size);
         for (BlockPos pos : structurePos) {
             int[] p = new int[] {
                     (pos.getX() - regionPos.x()*CHUNK_GROUP_SIZE*16)*samplingNum/16,
@@ -193,8 +134,8 @@ public class RoutePlanner {
                 for (int z = -5*samplingNum; z < 5*samplingNum; z++) {
                     int px = p[0]+x;
                     int pz = p[1]+z;
-                    if (px > 0 && px < costMap.length && pz > 0 && pz < costMap[0].length)
-                        costMap[px][pz] = 500;
+                    if (px > 0 && px < size && pz > 0 && pz < size)
+                        costMap[(px*size + pz) >>> 6] |= 1L << (px*size + pz);
                 }
             }
         }
@@ -202,30 +143,77 @@ public class RoutePlanner {
         return costMap;
     }
 
+    // 获得寻路窗口 损耗图和可复用的寻路数据
+    public CompletableFuture<PlanningWindow> requestWindow(ServerLevel level, Map<Long, float[]> sharedClusters) {
+        return requestCostMap(level).thenCombine(requestStructureCostMap(level),
+                (costMap, structureCostMap) -> new PlanningWindow(regionPos, costMap, structureCostMap, level.getSeaLevel(), sharedClusters));
+    }
+
     /**
-     * 滮·
-     * @param way ·ͼ
+     * 规划一条连接的路线 在本区域的寻路窗口中寻路
+     * @param connection 连接信息
+     * @param window 寻路窗口
+     * @return 路线(世界坐标系)
      */
-    public ResultWay getWay(List<int[]> way, int[][] costMap, StationPlanner.ConnectionGenInfo connectionGenInfo, ServerLevel level) {
+    public ResultWay planConnection(StationPlanner.ConnectionGenInfo connection, PlanningWindow window, ServerLevel level) {
+        TiledGrid costMap = window.costMap;
+        // 转为损耗图下坐标系
+        int[] picStart = AStarPathfinder.world2PicPos(connection.connectStart(), regionPos);
+        int[] picEnd = AStarPathfinder.world2PicPos(connection.connectEnd(), regionPos);
+        int[] additionalCosts = window.getAdditionalCosts(picStart, picEnd);
+        var options = AStarPathfinder.SearchOptions.fromConfig();
+        var landmarks = window.getLandmarks();
+        var result = switch (Config.pathSearchMode) {
+            case DIRECT -> AStarPathfinder.search(costMap, picStart, picEnd, additionalCosts, options, landmarks);
+            case HIERARCHICAL -> window.getHierarchy().search(picStart, picEnd, additionalCosts, options, landmarks);
+            case BIDIRECTIONAL -> AStarPathfinder.searchBidirectional(costMap, picStart, picEnd, additionalCosts, options, landmarks);
+            case COARSE_TO_FINE -> window.getCoarse().search(picStart, picEnd, additionalCosts, options, landmarks);
+        };
+        List<int[]> way = result.path();
+        if (way.size() < 2) {
+            // 起终点不在损耗图内 直接直线连接
+            way = AStarPathfinder.straightLine(clampToMap(picStart, costMap), clampToMap(picEnd, costMap));
+        }
+        if (!result.complete()) {
+            Tongdarailway.LOGGER.warn("Route search for region {} did not reach its end after {} expansions, using a straight line for the rest", regionPos, result.expansions());
+        } else if (result.suboptimality() > 1) {
+            Tongdarailway.LOGGER.debug("Route search for region {}: cost {}, at most {}x optimal, {} expansions", regionPos, result.cost(), result.suboptimality(), result.expansions());
+        }
+        // 设置出口坐标
+        return getWay(way, costMap, connection, level);
+    }
+
+    private static int[] clampToMap(int[] pos, TiledGrid map) {
+        return new int[] {
+                Mth.clamp(pos[0], 0, map.rows() - 1),
+                Mth.clamp(pos[1], 0, map.cols() - 1)
+        };
+    }
+
+    /**
+     * 规划路径
+     * @param way 路线图
+     */
+    public ResultWay getWay(List<int[]> way, TiledGrid costMap, StationPlanner.ConnectionGenInfo connectionGenInfo, ServerLevel level) {
         List<int[]> handledHeightWay = handleHeight(way, level, costMap, connectionGenInfo);
-        // תΪͼϵ
+        // 结果转为中心图坐标系
         handledHeightWay = handledHeightWay.stream().map(AStarPathfinder::pic2RegionPos).toList();
         return connectTrackNew3(handledHeightWay, connectionGenInfo);
     }
 
     /**
-     *  ߶
-     * @param path ֱ·()
-     * @param level 
+     * 测高 处理高度
+     * @param path 直行路径(区域内坐标)
+     * @param level 服务器世界
      */
-    public List<int[]> handleHeight(List<int[]> path, ServerLevel level, int[][] heightMap, StationPlanner.ConnectionGenInfo con) {
+    public List<int[]> handleHeight(List<int[]> path, ServerLevel level, TiledGrid heightMap, StationPlanner.ConnectionGenInfo con) {
         List<double[]> adPath = new LinkedList<>();
         int seaLevel = level.getSeaLevel();
 
-        // 
+        // 测高
         for (int[] p : path) {
-            int h = heightMap[p[0]][p[1]];
-            // Ƹ߶ȷΧ
+            int h = heightMap.get(p[0], p[1]);
+            // 限制高度范围
             h = Math.max(h, seaLevel + 5);
             h = Math.min(h, seaLevel + HEIGHT_MAX_INCREMENT);
             adPath.add(new double[]{p[0], p[1], h});
@@ -234,16 +222,16 @@ public class RoutePlanner {
         adPath.getFirst()[2] = con.connectStart()[2];
         adPath.getLast()[2] = con.connectEnd()[2];
 
-        // ߶ȵ
+        // 高度调整
         adPath = adjustmentHeight(adPath);
 
-        //ƽ ĩ㲻
+        //卷积平滑 保持首末点不变
         int max = adPath.stream().mapToInt(p -> (int) p[2]).max().orElse(0);
         int min = adPath.stream().mapToInt(p -> (int) p[2]).min().orElse(0);
         int framed2 = ((max - min) / 2) + 20;
 
         if (adPath.size() > framed2*2 && framed2*2 >= 3) {
-            // ƽĩ
+            // 平滑起末
             double fh = con.connectStart()[2];
             double lh = con.connectEnd()[2];
             if (adPath.size() > framed2*2+20) {
@@ -257,7 +245,7 @@ public class RoutePlanner {
                 }
             }
 
-            // ƽм
+            // 平滑中间
             List<double[]> adPath1 = new ArrayList<>();
             adPath1.add(adPath.getFirst());
             for (int i = 1; i < adPath.size()-1; i++) {
@@ -284,19 +272,19 @@ public class RoutePlanner {
 
         return adPath.stream()
                 .map(arr -> Arrays.stream(arr)
-                        .mapToInt(d -> (int) Math.round(d))  // 
+                        .mapToInt(d -> (int) Math.round(d))  // 四舍五入
                         .toArray()
                 )
                 .collect(Collectors.toList());
     }
 
     /**
-     * ֱ·ͨױƽ
-     * @param path ·ߵĶ˵
-     * @return Ӻĸ
+     * 将直线路径段通过三阶贝塞尔曲线平滑连接
+     * @param path 路线的端点
+     * @return 连接后的复合曲线
      */
     private ResultWay connectTrackNew3(List<int[]> path, StationPlanner.ConnectionGenInfo con) {
-        // תΪϵ
+        // 转换为世界坐标系
         List<Vec3> path0 = new ArrayList<>();
 
         for (int i = 0; i < path.size() - 2; i++) {
@@ -314,12 +302,12 @@ public class RoutePlanner {
         }
         path1.addLast(path0.getLast());
 
-        // ·ͳվ
+        // 连接线路和车站
 //        Vec3 last = path1.getLast();
 
         ResultWay result = new ResultWay(new CurveRoute(), new ArrayList<>());
 
-        // վ
+        // 车站起点连接
         Vec3 pA = con.start().add(con.startDir().scale(30)).add(con.exitDir().scale(25));
 //        pA = new Vec3(pA.x(), (int) path1.getFirst().y, pA.z());
         result.addBezier(con.start(), con.startDir(), pA.subtract(con.start()), con.exitDir().reverse());
@@ -337,7 +325,7 @@ public class RoutePlanner {
             Vec3 end = path1.get(i + 1);
 
             endDir = MyMth.get8Dir(end.subtract(start)).reverse();
-            if (i == path1.size() - 2) // յ
+            if (i == path1.size() - 2) // 处理和终点的连接
                 endDir = con.exitDir().reverse();
 
             if (ResultWay.getConnect(BlockPos.containing(start.multiply(1,0,1)), BlockPos.containing(end.multiply(1,0,1)), startDir, endDir, false) != null) {
@@ -359,16 +347,16 @@ public class RoutePlanner {
                 boolean maximiseTurn = start.y == end.y;
 
                 if (Mth.equal(dot, 1)) {
-                    // ǰ ֱ
+                    // 前方 直线
                     aDir = startDir;
                     result.addBezier(start, startDir, aPos.subtract(start), aDir.reverse());
                     result.addBezier(aPos, aDir, end.subtract(aPos), endDir);
                     continue;
                 } else if (dot > 0.78) {
-                    // бǰ 135ȶ۽
+                    // 斜前方 135度钝角
                     aDir = MyMth.rotateAroundY(startDir, cross, 45);
                 } else {
-                    // ǰ 90ֱ
+                    // 侧前方 90度直角
                     aDir = MyMth.rotateAroundY(startDir, cross, 90);
                 }
                 result.connectWay(start, aPos, startDir, aDir.reverse(), maximiseTurn);
@@ -377,19 +365,19 @@ public class RoutePlanner {
             startDir = endDir.reverse();
         }
 
-        // յ㳵վ
+        // 终点车站连接
         result.addBezier(pB, con.exitDir(), con.end().subtract(pB), con.endDir());
 
         return result;
     }
 
     /**
-     * ֱ·ͨױƽ
-     * @param path ·ߵĶ˵
-     * @return Ӻĸ
+     * 将直线路径段通过三阶贝塞尔曲线平滑连接
+     * @param path 路线的端点
+     * @return 连接后的复合曲线
      */
     private ResultWay connectTrackNew2(List<int[]> path, StationPlanner.ConnectionGenInfo con) {
-        // תΪϵ
+        // 转换为世界坐标系
         List<Vec3> path0 = new ArrayList<>();
 
         for (int i = 0; i < path.size() - 2; i++) {
@@ -411,12 +399,12 @@ public class RoutePlanner {
         Vec3 c1 = a1.add(b1.subtract(a1).scale(0.5));
         path1.addLast(new Vec3((int) c1.x(), (int) c1.y(), (int) c1.z()));
 
-        // ·ͳվ
+        // 连接线路和车站
         Vec3 last = path1.getLast();
 
         ResultWay result = new ResultWay(new CurveRoute(), new ArrayList<>());
 
-        // վ
+        // 车站起点连接
         Vec3 pA = con.start().add(con.startDir().scale(30)).add(con.exitDir().scale(25));
         pA = new Vec3(pA.x(), (int) path1.getFirst().y, pA.z());
         result.addBezier(con.start(), con.startDir(), pA.subtract(con.start()), con.exitDir().reverse());
@@ -433,28 +421,28 @@ public class RoutePlanner {
 
             Vec3 nextDir = end.subtract(start).multiply(1,0,1).normalize();
 
-            // ݼнǼ
+            // 根据夹角计算出方向
             double dot = startDir.dot(nextDir);
             double cross = startDir.x * nextDir.z - startDir.z * nextDir.x;
 
             boolean maximiseTurn = start.y == end.y;
             if (dot > 0.9999) {
-                // ǰ ֱ
+                // 前方 直线
                 endDir = startDir.reverse();
                 result.addBezier(start, startDir, end.subtract(start), endDir);
                 i++;
                 continue;
             } else if (dot > 0.975) {
-                // ǰ ƽ
+                // 前方 平行
                 endDir = startDir.reverse();
             } else if (dot > 0.75) {
-                // бǰ 135ȶ۽
+                // 斜前方 135度钝角
                 endDir = MyMth.rotateAroundY(startDir, cross, 45).reverse();
             } else if (dot > 0.165) {
-                // ǰ 90ֱ
+                // 侧前方 90度直角
                 endDir = MyMth.rotateAroundY(startDir, cross, 90).reverse();
             } else {
-                // ෽/ ֱ+һ
+                // 侧方/侧后方 直角+下一轮
                 endDir = MyMth.rotateAroundY(startDir, cross, 90).reverse();
 
                 Vec3 d1 = new Vec3(MyMth.splitFunc(startDir.x), 0, MyMth.splitFunc(startDir.z));
@@ -476,7 +464,7 @@ public class RoutePlanner {
             i++;
         }
 
-        // յ㳵վ
+        // 终点车站连接
         Vec3 pB = con.end().add(con.endDir().scale(30)).add(con.exitDir().reverse().scale(25));
         pB = new Vec3(pB.x(), (int) last.y, pB.z());
         result.connectWay(last, pB, startDir, con.exitDir().reverse(), false);
@@ -488,63 +476,63 @@ public class RoutePlanner {
 
     private static List<double[]> adjustmentHeight(List<double[]> path) {
         List<double[]> adjustedPath = new ArrayList<>();
-        //ĩ߶ȻߣԸ߶ȡ
+        //连接首末点计算高度基线，求出相对高度。
         if (path.size() < 2)
             return new LinkedList<>();
         double hStart = path.getFirst()[2];
         double hEnd = path.getLast()[2];
         double pNum = path.size() - 1;
 
-        //Ը߶
-        List<double[]> heightList0 = new ArrayList<>(); //ꡢԸ߶
-        Map<Integer, List<double[]>> heightGroups = new HashMap<>(); //߶
+        //计算相对高度
+        List<double[]> heightList0 = new ArrayList<>(); //坐标、相对高度
+        Map<Integer, List<double[]>> heightGroups = new HashMap<>(); //高度索引表
         double distance = 0;
         for (int i = 0; i < path.size(); i++) {
-            //Ը߶
+            //计算相对高度
             double[] point = path.get(i);
             double h = point[2] - hStart * ((pNum - i) / pNum) - hEnd * (i / pNum);
-            //
+            //计算距离
             if (i > 0) {
                 double h0 = point[2];
                 double h1 = path.get(i-1)[2];
                 distance += 1 + Math.abs(h0 - h1);
             }
-            //ɵ
-            double[] p = {point[0], point[1], h, i, distance}; //x,z,߶,,
-            //ӵ
+            //生成点
+            double[] p = {point[0], point[1], h, i, distance}; //x,z,高度,索引,距离
+            //添加到点表
             heightList0.add(p);
-            //Ӹ߶
+            //添加高度索引表
             int hi = (int) h;
             heightGroups.computeIfAbsent(hi, k -> new ArrayList<>()).add(p);
         }
-        // Ǻ
+        // 三角函数
         double sec = Math.sqrt(Math.pow(heightList0.size(), 2) + Math.pow(Math.abs(hStart - hEnd), 2)) / (heightList0.size());
 
-        //
+        //削峰填谷
         for (int j = 0; j < heightList0.size(); j++) {
-            double[] thisPoint = heightList0.get(j); //ȡĿǰ
+            double[] thisPoint = heightList0.get(j); //获取目前点
             adjustedPath.add(new double[] {thisPoint[0], thisPoint[1], thisPoint[2]});
-            int hd = 0; //hd: һĿǰĸ߲
-            if (j < heightList0.size() - 1) { //һĿǰĸ߲
+            int hd = 0; //hd: 下一个点和目前点的高差
+            if (j < heightList0.size() - 1) { //下一个点和目前点的高差
                 hd = (int)heightList0.get(j+1)[2] - (int)thisPoint[2];
             }
-            //ͬ߶ȣ
+            //同高度，跳过
             if (hd == 0)
                 continue;
-            double h = thisPoint[2]; //Ŀǰ߶
-            var group = heightGroups.get((int)h); //ȡĿǰͬ߶ȵĵ
-            int groupIndex = group.indexOf(thisPoint); //ǰڵе
-            //ȡͬ߶ȵеһ
-            if (groupIndex < group.size() - 1) { //к
-                double[] nextSameHeightPoint = group.get(groupIndex+1); //ͬ߶ȵһ
-                int nextPointIndex = heightList0.indexOf(nextSameHeightPoint); //
+            double h = thisPoint[2]; //目前点高度
+            var group = heightGroups.get((int)h); //获取目前点同高度的点组
+            int groupIndex = group.indexOf(thisPoint); //当前点在点组中的索引
+            //获取同高度点组中的下一个点
+            if (groupIndex < group.size() - 1) { //如果有后继
+                double[] nextSameHeightPoint = group.get(groupIndex+1); //同高度的下一个点
+                int nextPointIndex = heightList0.indexOf(nextSameHeightPoint); //它的索引
                 double dA = thisPoint[4], dB = nextSameHeightPoint[4];
                 double iA = thisPoint[3], iB = nextSameHeightPoint[3];
-                //ܵ ܵ
+                //可能的桥 可能的隧道
                 boolean conditionBridge = hd < 0 && (iB - iA) * 4 * sec < dB - dA;
                 boolean conditionTunnel = hd > 0 && (iB - iA) * 3 * sec < dB - dA;
                 if (conditionBridge || conditionTunnel) {
-                    //߶
+                    //调整高度
                     for (int k = j; k < nextPointIndex; k++) {
                         double[] np1 = heightList0.get(k+1);
                         adjustedPath.add(new double[] {np1[0], np1[1], thisPoint[2]});
@@ -553,7 +541,7 @@ public class RoutePlanner {
                 }
             }
         }
-        //ٽеĸ߶ȼϻ
+        //最终再将所有点的高度加上基线
         for (int i = 0; i < adjustedPath.size(); i++) {
             double[] p = adjustedPath.get(i);
             p[2] += hStart * ((pNum - i) / pNum) + hEnd * (i / pNum);
@@ -566,6 +554,17 @@ public class RoutePlanner {
             CurveRoute way,
             List<TrackPutInfo> trackPutInfos
     ) {
+        /**
+         * 估算占用的内存 用于区域缓存的预算
+         */
+        public long estimateBytes() {
+            long bytes = 48 + way.estimateBytes();
+            for (TrackPutInfo track : trackPutInfos) {
+                bytes += track.bezier() != null ? 256 : 72;
+            }
+            return bytes;
+        }
+
         public void connectWay(Vec3 start, Vec3 end, Vec3 startDir, Vec3 endDir, boolean maximiseTurn) {
             int h = (int) ((start.y + end.y) / 2);
             Vec3 s = new Vec3(start.x, h, start.z);
@@ -588,7 +587,7 @@ public class RoutePlanner {
                     addBezier(conEnd, endDir.reverse(), end.subtract(conEnd), endDir);
                 }
             } else {
-                // ǿ
+                // 强行连接
                 addBezier(start, startDir, end.subtract(start), endDir);
                 Tongdarailway.LOGGER.warn("The road position cannot be determined, and the line has been forced to connect. {} {}", start, end);
             }
@@ -745,15 +744,26 @@ public class RoutePlanner {
         }
         public void addLine(Vec3 start, Vec3 end) {
             way.addSegment(new CurveRoute.LineSegment(start, end));
+            addStraightTracks(start, end);
+        }
+
+        // 直线上的铁轨 连续的同形状直轨合并为一段
+        private void addStraightTracks(Vec3 start, Vec3 end) {
             int n = Math.max((int) Math.abs(start.x - end.x), (int) Math.abs(start.z - end.z));
             for (int k = 0; k <= n; k++) {
                 int x = (int) (start.x + MyMth.getSign(end.x - start.x)*k);
                 int z = (int) (start.z + MyMth.getSign(end.z - start.z)*k);
-                trackPutInfos.add(TrackPutInfo.getByDir(
+                TrackPutInfo track = TrackPutInfo.getByDir(
                         new BlockPos(x, (int) start.y, z),
                         end.subtract(start),
                         null
-                ));
+                );
+                TrackPutInfo run = k > 0 ? trackPutInfos.getLast().extend(track.pos(), track.shape()) : null;
+                if (run != null) {
+                    trackPutInfos.set(trackPutInfos.size() - 1, run);
+                } else {
+                    trackPutInfos.add(track);
+                }
             }
         }
 
@@ -761,16 +771,7 @@ public class RoutePlanner {
             if (Mth.equal(Math.abs(startDir.dot(endDir)), 1) && Mth.equal(startDir.dot(endOffset.normalize()), 1) && endOffset.y == 0) {
                 Vec3 end = start.add(endOffset);
                 way.addSegment(new CurveRoute.LineSegment(start, end));
-                int n = Math.max((int) Math.abs(start.x - end.x), (int) Math.abs(start.z - end.z));
-                for (int k = 0; k <= n; k++) {
-                    int x = (int) (start.x + MyMth.getSign(end.x - start.x)*k);
-                    int z = (int) (start.z + MyMth.getSign(end.z - start.z)*k);
-                    trackPutInfos.add(TrackPutInfo.getByDir(
-                            new BlockPos(x, (int) start.y, z),
-                            end.subtract(start),
-                            null
-                    ));
-                }
+                addStraightTracks(start, end);
             } else {
                 way.addSegment(CurveRoute.BezierSegment.getCubicBezier(start, startDir, endOffset, endDir));
                 trackPutInfos.add(TrackPutInfo.getByDir(
@@ -1,10 +1,12 @@
 package com.hxzhitang.tongdarailway.railway.planner;
 
+import com.hxzhitang.tongdarailway.railway.RailwayBuilder;
 import com.hxzhitang.tongdarailway.railway.RegionPos;
 import com.hxzhitang.tongdarailway.structure.ModStructureManager;
 import com.hxzhitang.tongdarailway.structure.StationTemplate;
 import com.hxzhitang.tongdarailway.util.MyMth;
 import com.hxzhitang.tongdarailway.util.MyRandom;
+import com.hxzhitang.tongdarailway.util.PlannerPool;
 import net.minecraft.core.BlockPos;
 import net.minecraft.nbt.CompoundTag;
 import net.minecraft.server.level.ServerLevel;
@@ -15,11 +17,12 @@ import net.minecraft.world.level.levelgen.RandomState;
 import net.minecraft.world.phys.Vec3;
 
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 
 import static com.hxzhitang.tongdarailway.Tongdarailway.CHUNK_GROUP_SIZE;
 import static com.hxzhitang.tongdarailway.Tongdarailway.HEIGHT_MAX_INCREMENT;
 
-// վ滮 ӹ滮
+// 站点规划 连接规划
 public class StationPlanner {
     private final RegionPos regionPos;
 
@@ -27,7 +30,7 @@ public class StationPlanner {
         this.regionPos = regionPos;
     }
 
-    // վ
+    // 区域内站点生成
     public static List<StationGenInfo> generateStation(RegionPos regionPos, ServerLevel level, long seed) {
         ChunkGenerator gen = level.getChunkSource().getGenerator();
         RandomState cfg = level.getChunkSource().randomState();
@@ -43,7 +46,7 @@ public class StationPlanner {
 
         int h = y;
 
-        // ʹվĸ߶һС
+        // 使得站点的高度在一定区域内最小
         int miny = 2550;
         for (int ix = -2; ix < 3; ix++) {
             for (int iz = -2; iz < 3; iz++) {
@@ -57,10 +60,10 @@ public class StationPlanner {
         if (y - miny > 20)
             h = miny;
 
-        // ȷվ߶ seaLevel ~ seaLevel + 
+        // 确保站点高度在 seaLevel ~ seaLevel + 增量
         h = Math.max(h, level.getSeaLevel());
         h = Math.min(h, level.getSeaLevel() + HEIGHT_MAX_INCREMENT);
-        // ݸ߶Ⱦɵϻǵ³վ
+        // 根据高度决定生成地上还是地下车站
         StationTemplate station;
         int placeH = h;
         if (h < y - 10) {
@@ -73,17 +76,42 @@ public class StationPlanner {
         return result;
     }
 
-    // ·ӹ
-    public List<ConnectionGenInfo> generateConnections(ServerLevel level, long seed) {
+    // 请求本区域和四个相邻区域的车站
+    public CompletableFuture<Map<RegionPos, List<StationGenInfo>>> requestStations(ServerLevel level) {
+        RailwayBuilder builder = RailwayBuilder.getInstance(level.getSeed());
+        Map<RegionPos, CompletableFuture<List<StationGenInfo>>> futures = new LinkedHashMap<>();
+        for (RegionPos rPos : List.of(
+                regionPos,
+                new RegionPos(regionPos.x(), regionPos.z()-1),
+                new RegionPos(regionPos.x(), regionPos.z()+1),
+                new RegionPos(regionPos.x()+1, regionPos.z()),
+                new RegionPos(regionPos.x()-1, regionPos.z()))) {
+            futures.put(rPos, builder != null
+                    ? builder.requestStations(rPos)
+                    : CompletableFuture.supplyAsync(() -> generateStation(rPos, level, level.getSeed()), PlannerPool.get()));
+        }
+
+        return CompletableFuture.allOf(futures.values().toArray(new CompletableFuture[0])).thenApply(v -> {
+            Map<RegionPos, List<StationGenInfo>> result = new HashMap<>();
+            futures.forEach((rPos, future) -> result.put(rPos, future.join()));
+            return result;
+        });
+    }
+
+    /**
+     * 路线连接规则生成
+     * @param stations 本区域和四个相邻区域的车站
+     */
+    public List<ConnectionGenInfo> generateConnections(Map<RegionPos, List<StationGenInfo>> stations) {
         List<ConnectionGenInfo> result = new ArrayList<>();
 
-        List<StationGenInfo> thisStations = generateStation(regionPos, level, seed);
+        List<StationGenInfo> thisStations = stations.get(regionPos);
 
-        List<StationGenInfo> north = generateStation(new RegionPos(regionPos.x(), regionPos.z()-1), level, seed);
-        List<StationGenInfo> south = generateStation(new RegionPos(regionPos.x(), regionPos.z()+1), level, seed);
+        List<StationGenInfo> north = stations.get(new RegionPos(regionPos.x(), regionPos.z()-1));
+        List<StationGenInfo> south = stations.get(new RegionPos(regionPos.x(), regionPos.z()+1));
 
-        List<StationGenInfo> east = generateStation(new RegionPos(regionPos.x()+1, regionPos.z()), level, seed);
-        List<StationGenInfo> west = generateStation(new RegionPos(regionPos.x()-1, regionPos.z()), level, seed);
+        List<StationGenInfo> east = stations.get(new RegionPos(regionPos.x()+1, regionPos.z()));
+        List<StationGenInfo> west = stations.get(new RegionPos(regionPos.x()-1, regionPos.z()));
 
         var thisAssignedExits = assignExits(getExitsPos(thisStations));
 
@@ -96,15 +124,18 @@ public class StationPlanner {
 //        Tongdarailway.LOGGER.info("====> StationPlanner: {} {} {} {}", tpos.getX(), tpos.getY(), tpos.getZ(), regionPos);
 
 
-        result.add(ConnectionGenInfo.getConnectionInfo(thisAssignedExits.get(3), eastAssignedExits.get(2), new Vec3(1, 0, 0)));
-        result.add(ConnectionGenInfo.getConnectionInfo(westAssignedExits.get(3), thisAssignedExits.get(2), new Vec3(1, 0, 0)));
-        result.add(ConnectionGenInfo.getConnectionInfo(northAssignedExits.get(1), thisAssignedExits.get(0), new Vec3(0, 0, 1)));
-        result.add(ConnectionGenInfo.getConnectionInfo(thisAssignedExits.get(1), southAssignedExits.get(0), new Vec3(0, 0, 1)));
+        // 东、南两条连接由本区域规划，西、北两条由相邻区域规划
+        RegionPos westPos = new RegionPos(regionPos.x()-1, regionPos.z());
+        RegionPos northPos = new RegionPos(regionPos.x(), regionPos.z()-1);
+        result.add(ConnectionGenInfo.getConnectionInfo(thisAssignedExits.get(3), eastAssignedExits.get(2), new Vec3(1, 0, 0), regionPos));
+        result.add(ConnectionGenInfo.getConnectionInfo(westAssignedExits.get(3), thisAssignedExits.get(2), new Vec3(1, 0, 0), westPos));
+        result.add(ConnectionGenInfo.getConnectionInfo(northAssignedExits.get(1), thisAssignedExits.get(0), new Vec3(0, 0, 1), northPos));
+        result.add(ConnectionGenInfo.getConnectionInfo(thisAssignedExits.get(1), southAssignedExits.get(0), new Vec3(0, 0, 1), regionPos));
 
         return result;
     }
 
-    // ȡг
+    // 提取所有出口
     private List<StationTemplate.Exit> getExitsPos(List<StationGenInfo> stations) {
         List<StationTemplate.Exit> exits = new ArrayList<>();
         for (StationGenInfo station : stations) {
@@ -119,9 +150,9 @@ public class StationPlanner {
     }
 
     /**
-     * 䶫
-     * @param exits ڼ
-     * @return ڼ ˳: [, , , , ]
+     * 分配东南西北向出口
+     * @param exits 出口集合
+     * @return 出口集合 顺序: [北, 南, 西, 东, 其他]
      */
     private List<StationTemplate.Exit> assignExits(List<StationTemplate.Exit> exits) {
         if (exits.size() < 4) {
@@ -131,7 +162,7 @@ public class StationPlanner {
         List<StationTemplate.Exit> copy = new ArrayList<>(exits);
 
         List<StationTemplate.Exit> result = new ArrayList<>();
-        // Գڵİz ƫֹzͬ
+        // 对出口的按z坐标进行排序 加偏防止z存在相同
         copy.sort(Comparator.comparingDouble(e -> {
             int z = e.exitPos().getZ();
             Random random = new Random(75_1049 + z);
@@ -139,10 +170,10 @@ public class StationPlanner {
             return z + off;
         }));
 
-        result.add(copy.removeFirst()); //zС 
-        result.add(copy.removeLast());  //z 
+        result.add(copy.removeFirst()); //z最小 北
+        result.add(copy.removeLast());  //z最大 南
 
-        // Գڵİx ƫֹxͬ
+        // 对出口的按x坐标进行排序 加偏防止x存在相同
         copy.sort(Comparator.comparingDouble(e -> {
             int x = e.exitPos().getX();
             Random random = new Random(75_1052 + x);
@@ -150,10 +181,10 @@ public class StationPlanner {
             return x + off;
         }));
 
-        result.add(copy.removeFirst());  //xС 
-        result.add(copy.removeLast());  //x 
+        result.add(copy.removeFirst());  //x最小 西
+        result.add(copy.removeLast());  //x最大 东
 
-        // ʣExitŵresult
+        // 剩余的Exit放到result最后
         Set<StationTemplate.Exit> addedExits = new HashSet<>(result);
         for (StationTemplate.Exit exit : exits) {
             if (!addedExits.contains(exit)) {
@@ -161,7 +192,7 @@ public class StationPlanner {
             }
         }
 
-        return result; //    
+        return result; // 北 南 西 东
     }
 
     private static int[] getConnectStart(BlockPos exitPos, Vec3 dir, Vec3 offset, Vec3 exitDir) {
@@ -169,11 +200,11 @@ public class StationPlanner {
 //        Vec3 addOff = offset.normalize().scale(30);
         Vec3 addOff = exitDir.scale(68);
         Vec3 start = pos.add(dir.scale(30).add(addOff));
-        // yȷվߺͳվͬ߶
+        // 最后的y尽量确保出站线和出站口在同高度
         return new int[] {(int) start.x, (int) start.z, exitPos.getY()};
     }
 
-    // վϢ(ϵ)
+    // 站点放置信息(世界坐标系)
     public record StationGenInfo(
             StationTemplate stationTemplate,
             BlockPos placePos
@@ -194,6 +225,13 @@ public class StationPlanner {
             int y = tag.getInt("y");
             int z = tag.getInt("z");
             StationTemplate.StationType type = StationTemplate.StationType.valueOf(tag.getString("type"));
+            return of(type, id, new BlockPos(x, y, z));
+        }
+
+        /**
+         * 按车站类型和编号找到车站模板 找不到时模板为null
+         */
+        public static StationGenInfo of(StationTemplate.StationType type, int id, BlockPos placePos) {
             StationTemplate stationTemplate = null;
             switch (type) {
                 case NORMAL -> {
@@ -208,18 +246,19 @@ public class StationPlanner {
                 }
             }
 
-            return new StationGenInfo(stationTemplate, new BlockPos(x, y, z));
+            return new StationGenInfo(stationTemplate, placePos);
         }
     }
 
     /**
-     * @param start        
-     * @param startDir     㷽
-     * @param end          յ
-     * @param endDir       յ㷽
-     * @param connectStart Ѱ·
-     * @param connectEnd   Ѱ·յ
-     */ // ·Ϣ(ϵ)
+     * @param start        起点坐标
+     * @param startDir     起点方向
+     * @param end          终点坐标
+     * @param endDir       终点方向
+     * @param connectStart 寻路起点
+     * @param connectEnd   寻路终点
+     * @param planRegion   负责规划的区域 在该区域的损耗图中寻路
+     */ // 路线连接信息(世界坐标系)
     public record ConnectionGenInfo(
             Vec3 start,
             Vec3 startDir,
@@ -227,9 +266,19 @@ public class StationPlanner {
             Vec3 endDir,
             int[] connectStart,
             int[] connectEnd,
-            Vec3 exitDir
+            Vec3 exitDir,
+            RegionPos planRegion
     ) {
-        public static ConnectionGenInfo getConnectionInfo(StationTemplate.Exit A, StationTemplate.Exit B, Vec3 exitDir) {
+        public ConnectionKey key() {
+            return new ConnectionKey(start, end);
+        }
+
+        // 连接另一端的区域 在负责规划的区域的东侧或南侧
+        public RegionPos neighborRegion() {
+            return new RegionPos(planRegion.x() + (int) exitDir.x, planRegion.z() + (int) exitDir.z);
+        }
+
+        public static ConnectionGenInfo getConnectionInfo(StationTemplate.Exit A, StationTemplate.Exit B, Vec3 exitDir, RegionPos planRegion) {
                 Vec3 APos = new Vec3(A.exitPos().getX(), A.exitPos().getY(), A.exitPos().getZ());
                 Vec3 BPos = new Vec3(B.exitPos().getX(), B.exitPos().getY(), B.exitPos().getZ());
                 return new ConnectionGenInfo(
@@ -239,8 +288,13 @@ public class StationPlanner {
                         B.dir(),
                         getConnectStart(A.exitPos(), A.dir(), BPos.subtract(APos), exitDir),
                         getConnectStart(B.exitPos(), B.dir(), APos.subtract(BPos), exitDir.reverse()),
-                        exitDir
+                        exitDir,
+                        planRegion
                 );
             }
         }
+
+    // 连接的标识 由起点车站出口和终点车站出口确定 相邻两个区域得到的同一条连接标识相同
+    public record ConnectionKey(Vec3 start, Vec3 end) {
+    }
 }
@@ -0,0 +1,146 @@
+package com.hxzhitang.tongdarailway.railway.planner;
+
+import com.hxzhitang.tongdarailway.railway.RegionPos;
+import com.hxzhitang.tongdarailway.util.PlannerPool;
+import net.minecraft.core.Holder;
+import net.minecraft.core.registries.Registries;
+import net.minecraft.server.level.ServerLevel;
+import net.minecraft.world.level.ChunkPos;
+import net.minecraft.world.level.LevelHeightAccessor;
+import net.minecraft.world.level.chunk.ChunkGeneratorStructureState;
+import net.minecraft.world.level.chunk.ProtoChunk;
+import net.minecraft.world.level.chunk.UpgradeData;
+import net.minecraft.world.level.levelgen.structure.StructureSet;
+import net.minecraft.world.level.levelgen.structure.placement.ConcentricRingsStructurePlacement;
+import net.minecraft.world.level.levelgen.structure.placement.RandomSpreadStructurePlacement;
+import net.minecraft.world.level.levelgen.structure.placement.StructurePlacement;
+
+import java.util.*;
+import java.util.concurrent.RecursiveTask;
+
+import static com.hxzhitang.tongdarailway.Tongdarailway.CHUNK_GROUP_SIZE;
+
+// 结构探测 先由结构放置规则筛选候选区块，只对候选区块做完整的结构起点验证
+public class StructureProber {
+    private final ServerLevel level;
+    private final ChunkGeneratorStructureState structureState;
+    private final LevelHeightAccessor heightAccessor;
+
+    public StructureProber(ServerLevel level) {
+        this.level = level;
+        this.structureState = level.getChunkSource().getGeneratorState();
+        var dimensionType = level.dimensionType();
+        this.heightAccessor = LevelHeightAccessor.create(dimensionType.minY(), dimensionType.height());
+    }
+
+    /**
+     * 获取区域内可能放置结构起点的区块
+     * 随机分布放置每个网格只有一个可能的区块，同心环放置直接取环上的区块，其他放置类型逐区块判断
+     * @param regionPos 区域坐标
+     * @return 候选区块
+     */
+    public Set<ChunkPos> getCandidateChunks(RegionPos regionPos) {
+        int minX = regionPos.x() * CHUNK_GROUP_SIZE;
+        int minZ = regionPos.z() * CHUNK_GROUP_SIZE;
+        int maxX = minX + CHUNK_GROUP_SIZE - 1;
+        int maxZ = minZ + CHUNK_GROUP_SIZE - 1;
+        long seed = structureState.getLevelSeed();
+
+        Set<ChunkPos> candidates = new HashSet<>();
+        for (Holder<StructureSet> structureSet : structureState.possibleStructureSets()) {
+            StructurePlacement placement = structureSet.value().placement();
+            if (placement instanceof RandomSpreadStructurePlacement randomSpread) {
+                int spacing = randomSpread.spacing();
+                for (int gx = Math.floorDiv(minX, spacing); gx <= Math.floorDiv(maxX, spacing); gx++) {
+                    for (int gz = Math.floorDiv(minZ, spacing); gz <= Math.floorDiv(maxZ, spacing); gz++) {
+                        ChunkPos pos = randomSpread.getPotentialStructureChunk(seed, gx * spacing, gz * spacing);
+                        testCandidate(placement, pos, regionPos, candidates);
+                    }
+                }
+            } else if (placement instanceof ConcentricRingsStructurePlacement rings) {
+                List<ChunkPos> ringPositions = structureState.getRingPositionsFor(rings);
+                if (ringPositions == null)
+                    continue;
+                for (ChunkPos pos : ringPositions) {
+                    testCandidate(placement, pos, regionPos, candidates);
+                }
+            } else {
+                // 未知的放置类型(模组添加) 逐区块判断
+                for (int x = minX; x <= maxX; x++) {
+                    for (int z = minZ; z <= maxZ; z++) {
+                        if (placement.isStructureChunk(structureState, x, z))
+                            candidates.add(new ChunkPos(x, z));
+                    }
+                }
+            }
+        }
+
+        return candidates;
+    }
+
+    /**
+     * 查找区域内所有结构起点所在的区块
+     * @param regionPos 区域坐标
+     * @return 有结构起点的区块
+     */
+    public List<ChunkPos> findStructureStarts(RegionPos regionPos) {
+        List<ChunkPos> candidates = new ArrayList<>(getCandidateChunks(regionPos));
+        return PlannerPool.invoke(new ProbeTask(candidates, 0, candidates.size()));
+    }
+
+    /**
+     * 在候选区块上生成结构起点，验证群系等条件
+     * @param chunkPos 候选区块
+     * @return 该区块上是否有结构起点
+     */
+    public boolean hasStructureStart(ChunkPos chunkPos) {
+        var registryAccess = level.registryAccess();
+        var biomeRegistry = registryAccess.registryOrThrow(Registries.BIOME);
+        var protoChunk = new ProtoChunk(chunkPos, UpgradeData.EMPTY, heightAccessor, biomeRegistry, null);
+        level.getChunkSource().getGenerator().createStructures(registryAccess, structureState, level.structureManager(), protoChunk, level.getStructureManager());
+        return !protoChunk.getAllStarts().isEmpty();
+    }
+
+    // 二分候选区块列表 并行验证
+    private class ProbeTask extends RecursiveTask<List<ChunkPos>> {
+        private static final int THRESHOLD = 4;
+
+        private final List<ChunkPos> candidates;
+        private final int from, to;
+
+        ProbeTask(List<ChunkPos> candidates, int from, int to) {
+            this.candidates = candidates;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected List<ChunkPos> compute() {
+            if (to - from <= THRESHOLD) {
+                List<ChunkPos> result = new ArrayList<>();
+                for (int i = from; i < to; i++) {
+                    ChunkPos chunkPos = candidates.get(i);
+                    if (hasStructureStart(chunkPos))
+                        result.add(chunkPos);
+                }
+                return result;
+            }
+
+            int mid = (from + to) >>> 1;
+            ProbeTask left = new ProbeTask(candidates, from, mid);
+            ProbeTask right = new ProbeTask(candidates, mid, to);
+            left.fork();
+            List<ChunkPos> result = new ArrayList<>(right.compute());
+            result.addAll(left.join());
+            return result;
+        }
+    }
+
+    private void testCandidate(StructurePlacement placement, ChunkPos pos, RegionPos regionPos, Set<ChunkPos> candidates) {
+        if (Math.floorDiv(pos.x, CHUNK_GROUP_SIZE) != regionPos.x() || Math.floorDiv(pos.z, CHUNK_GROUP_SIZE) != regionPos.z())
+            return;
+        // 频率削减、排除区等额外限制
+        if (placement.isStructureChunk(structureState, pos.x, pos.z))
+            candidates.add(pos);
+    }
+}
@@ -26,16 +26,16 @@ import java.util.zip.GZIPInputStream;
 public class ModStructureManager extends SimpleJsonResourceReloadListener {
     private static final String folder = "railway_structure";
 
-    // ͨվ
+    // 普通车站
     public static final Map<Integer, StationTemplate> normalStation = new HashMap<>();
-    // ³վ
+    // 地下车站
     public static final Map<Integer, StationTemplate> undergroundStation = new HashMap<>();
 
-    // ··
+    // 路面路基
     public static final Map<Integer, RailwayTemplate> ground = new HashMap<>();
-    // 
+    // 隧道
     public static final Map<Integer, RailwayTemplate> tunnel = new HashMap<>();
-    // 
+    // 桥梁
     public static final Map<Integer, RailwayTemplate> bridge = new HashMap<>();
 
     @SubscribeEvent
@@ -128,7 +128,7 @@ public class ModStructureManager extends SimpleJsonResourceReloadListener {
         });
     }
 
-    // ȡɵĽṹģ
+    // 随机获取用于生成的结构模板
     public static StationTemplate getRandomNormalStation(long seed) {
         if (normalStation.isEmpty()) {
             return null;
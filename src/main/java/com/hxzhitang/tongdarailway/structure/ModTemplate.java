@@ -69,32 +69,32 @@ public abstract class ModTemplate {
     }
 
     /**
-     * ṹ NBT 
+     * 解析结构 NBT 数据
      */
     private VoxelGrid parseStructureNBT(CompoundTag rootTag) {
         if (rootTag == null) return null;
 
-        // ȡϢ
+        // 读取基本信息
         ListTag sizeTag = rootTag.getList("size", Tag.TAG_INT);
         int x = sizeTag.getInt(0), y = sizeTag.getInt(1), z = sizeTag.getInt(2);
         BlockPos size = new BlockPos(x, y, z);
 
-        // ɫ
+        // 解析调色板
         List<BlockState> palette = parsePalette(rootTag.getList("palette", Tag.TAG_COMPOUND));
 
-        // ݲ
+        // 解析方块数据并构建体素网格
         int[][][] voxelGrid = parseBlocks(rootTag.getList("blocks", Tag.TAG_COMPOUND), size);
 
         return new VoxelGrid(palette, voxelGrid, size);
     }
 
     /**
-     * ɫ
+     * 解析调色板
      */
     private List<BlockState> parsePalette(ListTag paletteTag) {
         List<BlockState> palette = new ArrayList<>();
 
-        //  0 Ǵλ
+        // 索引 0 总是代表空位
         palette.add(Blocks.STRUCTURE_VOID.defaultBlockState());
 
         for (int i = 0; i < paletteTag.size(); i++) {
@@ -107,7 +107,7 @@ public abstract class ModTemplate {
     }
 
     /**
-     * ״̬
+     * 解析单个方块状态
      */
     private BlockState parseBlockState(CompoundTag blockTag) {
         try {
@@ -117,7 +117,7 @@ public abstract class ModTemplate {
 
             BlockState blockState = block.defaultBlockState();
 
-            // ԣУ
+            // 解析方块属性（如果有）
             if (blockTag.contains("Properties", Tag.TAG_COMPOUND)) {
                 CompoundTag propertiesTag = blockTag.getCompound("Properties");
                 blockState = applyProperties(blockState, propertiesTag);
@@ -131,7 +131,7 @@ public abstract class ModTemplate {
     }
 
     /**
-     * Ӧ÷
+     * 应用方块属性
      */
     private BlockState applyProperties(BlockState blockState, CompoundTag propertiesTag) {
         BlockState resultState = blockState;
@@ -139,7 +139,7 @@ public abstract class ModTemplate {
         for (String propertyName : propertiesTag.getAllKeys()) {
             String propertyValue = propertiesTag.getString(propertyName);
 
-            // ҶӦķ
+            // 查找对应的方块属性
             Optional<Property<?>> property = findProperty(blockState, propertyName);
 
             if (property.isPresent()) {
@@ -151,7 +151,7 @@ public abstract class ModTemplate {
     }
 
     /**
-     * ҷ
+     * 查找方块属性
      */
     private Optional<Property<?>> findProperty(BlockState blockState, String propertyName) {
         return blockState.getProperties().stream()
@@ -160,7 +160,7 @@ public abstract class ModTemplate {
     }
 
     /**
-     * ÷ֵ
+     * 设置方块属性值
      */
     private <T extends Comparable<T>> BlockState setPropertyValue(
             BlockState blockState, Property<T> property, String value) {
@@ -170,17 +170,17 @@ public abstract class ModTemplate {
             return blockState.setValue(property, propertyValue.get());
         } else {
             throw new IllegalArgumentException(
-                    "Чֵ: " + value + " : " + property.getName());
+                    "无效的属性值: " + value + " 对于属性: " + property.getName());
         }
     }
 
     /**
-     * ݲ
+     * 解析方块数据并构建体素网格
      */
     private int[][][] parseBlocks(ListTag blocksTag, BlockPos size) {
         int[][][] voxelGrid = new int[size.getX()][size.getY()][size.getZ()];
 
-        // ʼΪ -1
+        // 初始化网格为 -1（空气）
         for (int x = 0; x < size.getX(); x++) {
             for (int y = 0; y < size.getY(); y++) {
                 for (int z = 0; z < size.getZ(); z++) {
@@ -189,20 +189,20 @@ public abstract class ModTemplate {
             }
         }
 
-        // ʵʷ
+        // 填充实际方块
         for (int i = 0; i < blocksTag.size(); i++) {
             CompoundTag blockTag = blocksTag.getCompound(i);
 
-            // ȡλ
+            // 读取位置
             ListTag posTag = blockTag.getList("pos", Tag.TAG_INT);
             int x = posTag.getInt(0);
             int y = posTag.getInt(1);
             int z = posTag.getInt(2);
 
-            // ȡɫ
+            // 读取调色板索引
             int state = blockTag.getInt("state");
 
-            // ȷλڷΧ
+            // 确保位置在范围内
             if (x >= 0 && x < size.getX() && y >= 0 && y < size.getY() && z >= 0 && z < size.getZ()) {
                 voxelGrid[x][y][z] = state + 1;
             }
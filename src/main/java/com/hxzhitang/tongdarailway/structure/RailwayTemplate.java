@@ -18,24 +18,24 @@ public class RailwayTemplate extends ModTemplate {
     public boolean isInVoxel(double x, double y, double z) {
         int originalX = (int) Math.floor(x) % getWidth();
 
-        int originalY = (int) Math.ceil(y + heightOffset + 1);  // ·߶ȼy
+        int originalY = (int) Math.ceil(y + heightOffset + 1);  // 从路面高度计y坐标
         int originalZ = (int) Math.floor(z + getDepth() / 2.0);
 
         return voxelGrid.isInVoxel(originalX, originalY, originalZ);
     }
 
-    // ϵԭzķķ괦
+    // 坐标系原点在z方向中心方块的方块坐标处
     @Override
     public BlockState getBlockState(double x, double y, double z) {
-        // ӳԭʼ
-        // ԭʼX߲
+        // 映射回原始体素坐标
+        // 原始X坐标由曲线参数决定
         int originalX = (int) Math.floor(x) % getWidth();
 
-        // ԭʼYZɾֲģ
-        int originalY = (int) Math.ceil(y + heightOffset + 1);  // ·߶ȼy
+        // 原始Y和Z坐标由局部坐标决定（考虑网格中心）
+        int originalY = (int) Math.ceil(y + heightOffset + 1);  // 从路面高度计y坐标
         int originalZ = (int) Math.floor(z + getDepth() / 2.0);
 
-        // ظײ㷽
+        // 重复最底层方块
         if (originalY < 0)
             originalY = 0;
 
@@ -66,19 +66,19 @@ public class StationTemplate extends ModTemplate {
     public Set<ChunkPos> getBoundChunks(Vec3 center) {
         Set<ChunkPos> chunks = new HashSet<>();
 
-        // AABB߽
+        // 计算区域的AABB（轴对齐边界框）
         double minX = center.x - getWidth() / 2.0;
         double maxX = center.x + getWidth() / 2.0;
         double minZ = center.z - getDepth() / 2.0;
         double maxZ = center.z + getDepth() / 2.0;
 
-        // תΪ꣨һ16x16x256
+        // 转换为区块坐标（一个区块是16x16x256格）
         int minChunkX = (int) Math.floor(minX / 16.0);
         int maxChunkX = (int) Math.floor(maxX / 16.0);
         int minChunkZ = (int) Math.floor(minZ / 16.0);
         int maxChunkZ = (int) Math.floor(maxZ / 16.0);
 
-        // 漰
+        // 遍历所有涉及的区块
         for (int chunkX = minChunkX; chunkX <= maxChunkX; chunkX++) {
             for (int chunkZ = minChunkZ; chunkZ <= maxChunkZ; chunkZ++) {
                 chunks.add(new ChunkPos(chunkX, chunkZ));
@@ -139,19 +139,19 @@ public class StationTemplate extends ModTemplate {
         int trayWidth = getWidth() + 20 + 10;
         int trayDepth = getDepth() + 20 + 10;
 
-        // AABB߽
+        // 计算区域的AABB（轴对齐边界框）
         double minX = center.x - trayWidth / 2.0;
         double maxX = center.x + trayWidth / 2.0;
         double minZ = center.z - trayDepth / 2.0;
         double maxZ = center.z + trayDepth / 2.0;
 
-        // תΪ꣨һ16x16x256
+        // 转换为区块坐标（一个区块是16x16x256格）
         int minChunkX = (int) Math.floor(minX / 16.0);
         int maxChunkX = (int) Math.floor(maxX / 16.0);
         int minChunkZ = (int) Math.floor(minZ / 16.0);
         int maxChunkZ = (int) Math.floor(maxZ / 16.0);
 
-        // 漰
+        // 遍历所有涉及的区块
         for (int chunkX = minChunkX; chunkX <= maxChunkX; chunkX++) {
             for (int chunkZ = minChunkZ; chunkZ <= maxChunkZ; chunkZ++) {
                 chunks.add(new ChunkPos(chunkX, chunkZ));
@@ -162,8 +162,8 @@ public class StationTemplate extends ModTemplate {
     }
 
     /**
-     *  P ƽı  ̾
-     * 㼸һ
+     * 计算点 P 到平面四边形 托盘 的最短距离
+     * 计算几何这一块
      */
     public double dis2Tray(Vec3 center, Vec3 p) {
         int trayWidth = getWidth() + 20;
@@ -178,26 +178,26 @@ public class StationTemplate extends ModTemplate {
 
         Vec3 v0 = new Vec3(minX, y, minZ), v1 = new Vec3(minX, y, maxZ), v2 = new Vec3(maxX, y, maxZ), v3 = new Vec3(maxX, y, minZ);
 
-        // 1. 㷨
+        // 1. 计算法向量
         Vec3 e10 = v1.subtract(v0);
         Vec3 e20 = v2.subtract(v0);
         Vec3 n = e10.cross(e20);
         double areaSq = n.dot(n);
 
-        // ı˻
-        if (areaSq < 1e-12) return distPointToSegment(p, v0, v2); // 򻯴
+        // 如果四边形退化
+        if (areaSq < 1e-12) return distPointToSegment(p, v0, v2); // 简化处理
 
-        // 2. 㵽ƽĴֱ
+        // 2. 计算点到平面的垂直距离
         double h = p.subtract(v0).dot(n) / Math.sqrt(areaSq);
         Vec3 pProj = p.subtract(n.scale(h / Math.sqrt(areaSq)));
 
-        // 3. жͶӰǷıڲ (͹ı)
+        // 3. 判断投影点是否在四边形内部 (仅适用于凸四边形)
         Vec3[] verts = {v0, v1, v2, v3};
         boolean inside = true;
         for (int i = 0; i < 4; i++) {
             Vec3 edge = verts[(i + 1) % 4].subtract(verts[i]);
             Vec3 vp = pProj.subtract(verts[i]);
-            // 뷨෴˵ⲿ
+            // 如果叉积方向与法线相反，说明在外部
             if (edge.cross(vp).dot(n) < 0) {
                 inside = false;
                 break;
@@ -208,7 +208,7 @@ public class StationTemplate extends ModTemplate {
             return Math.abs(h);
         }
 
-        // 4. ⲿ㵽 4 ߵС
+        // 4. 如果在外部，计算到 4 条边的最小距离
         double d1 = distPointToSegment(p, v0, v1);
         double d2 = distPointToSegment(p, v1, v2);
         double d3 = distPointToSegment(p, v2, v3);
@@ -218,13 +218,13 @@ public class StationTemplate extends ModTemplate {
     }
 
     /**
-     * 㵽߶ε̾
+     * 点到线段的最短距离
      */
     public static double distPointToSegment(Vec3 p, Vec3 a, Vec3 b) {
         Vec3 v = b.subtract(a);
         Vec3 w = p.subtract(a);
         double t = w.dot(v) / v.dot(v);
-        t = Math.max(0, Math.min(1, t)); //  [0, 1] Χ
+        t = Math.max(0, Math.min(1, t)); // 限制在 [0, 1] 范围内
         Vec3 closest = a.add(v.scale(t));
         return p.subtract(closest).length();
     }
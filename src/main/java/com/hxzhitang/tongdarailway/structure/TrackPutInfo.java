@@ -5,12 +5,55 @@ import net.minecraft.core.BlockPos;
 import net.minecraft.nbt.CompoundTag;
 import net.minecraft.world.phys.Vec3;
 
+// 铁轨放置信息
+// 直轨可以是一段连续的铁轨: 从pos开始共length格，每格沿(stepX, 0, stepZ)前进，放置时才展开为单个方块
+// 曲线铁轨的length总是1
 public record TrackPutInfo(
         BlockPos pos,
         TrackShape shape,
         BezierInfo bezier,
-        TrackShape endShape
+        TrackShape endShape,
+        int length,
+        int stepX,
+        int stepZ
 ) {
+    public TrackPutInfo(BlockPos pos, TrackShape shape, BezierInfo bezier, TrackShape endShape) {
+        this(pos, shape, bezier, endShape, 1, 0, 0);
+    }
+
+    /**
+     * 第i格铁轨的位置
+     */
+    public BlockPos blockAt(int i) {
+        return i == 0 ? pos : pos.offset(stepX * i, 0, stepZ * i);
+    }
+
+    /**
+     * 把下一格直轨接到这一段末尾
+     * @return 接上后的一段 不能接上时返回null
+     */
+    public TrackPutInfo extend(BlockPos next, TrackShape nextShape) {
+        if (bezier != null || nextShape != shape)
+            return null;
+        BlockPos last = blockAt(length - 1);
+        int dx = next.getX() - last.getX();
+        int dz = next.getZ() - last.getZ();
+        if (next.getY() != last.getY() || Math.abs(dx) > 1 || Math.abs(dz) > 1 || dx == 0 && dz == 0)
+            return null;
+        if (length > 1 && (dx != stepX || dz != stepZ))
+            return null;
+        return new TrackPutInfo(pos, shape, null, null, length + 1, dx, dz);
+    }
+
+    /**
+     * 取出第from格开始的count格
+     */
+    public TrackPutInfo slice(int from, int count) {
+        if (from == 0 && count == length)
+            return this;
+        return new TrackPutInfo(blockAt(from), shape, bezier, endShape, count, count > 1 ? stepX : 0, count > 1 ? stepZ : 0);
+    }
+
     public static TrackPutInfo getByDir(BlockPos pos, Vec3 dir, BezierInfo bezier) {
         if (bezier != null)
             return new TrackPutInfo(pos, getShape(dir), bezier, getShape(bezier.endAxis));
@@ -20,16 +63,16 @@ public record TrackPutInfo(
     private static TrackShape getShape(Vec3 dir) {
         TrackShape shape = TrackShape.XO;
         if (Math.abs(dir.x) < 1e-6) {
-            // Ƿָzxӽ0
+            // 检查是否指向z轴正负方向（x接近0）
             shape = TrackShape.ZO;
         } else if (Math.abs(dir.z) < 1e-6) {
-            // Ƿָxzӽ0
+            // 检查是否指向x轴正负方向（z接近0）
             shape = TrackShape.XO;
         } else if (dir.x * dir.z > 0) {
-            // Ƿָһޣxzͬţ
+            // 检查是否指向第一第三象限（x和z同号）
             shape = TrackShape.PD;
         } else if (dir.x * dir.z < 0) {
-            // Ƿָڶޣxzţ
+            // 检查是否指向第二第四象限（x和z异号）
             shape = TrackShape.ND;
         }
 
@@ -46,6 +89,11 @@ public record TrackPutInfo(
             nbt.put("bezier", bezier.toNbt());
             nbt.putString("endShape", endShape.name());
         }
+        if (length > 1) {
+            nbt.putInt("length", length);
+            nbt.putByte("stepX", (byte) stepX);
+            nbt.putByte("stepZ", (byte) stepZ);
+        }
 
         return nbt;
     }
@@ -61,6 +109,9 @@ public record TrackPutInfo(
             endShape = TrackShape.valueOf(nbt.getString("endShape"));
         }
 
+        if (nbt.contains("length")) {
+            return new TrackPutInfo(pos, shape, bezier, endShape, nbt.getInt("length"), nbt.getByte("stepX"), nbt.getByte("stepZ"));
+        }
         return new TrackPutInfo(pos, shape, bezier, endShape);
     }
 
@@ -103,14 +103,14 @@ public class VoxelGrid {
             if (paletteIndex > 0 && paletteIndex < palette.size()) {
                 var blockState = palette.get(paletteIndex);
                 if (blockState.is(Blocks.STRUCTURE_VOID))
-                    return null; // ṹλ
+                    return null; // 结构空位
                 if (blockState.is(Blocks.STRUCTURE_BLOCK))
-                    return Blocks.AIR.defaultBlockState(); // ֹֽṹ
+                    return Blocks.AIR.defaultBlockState(); // 防止出现结构方块
 
                 return blockState;
             }
         }
-        return null; // ޷
+        return null; // 空气或无方块
     }
 
     public void setVoxel(int x, int y, int z, int value) {
@@ -123,6 +123,6 @@ public class VoxelGrid {
         if (x >= 0 && x < size.getX() && y >= 0 && y < size.getY() && z >= 0 && z < size.getZ()) {
             return voxelGrid[x][y][z];
         }
-        return -1; // ĬϿ
+        return -1; // 默认空体素
     }
 }
@@ -1,158 +1,640 @@
 package com.hxzhitang.tongdarailway.util;
 
+import com.hxzhitang.tongdarailway.Config;
 import com.hxzhitang.tongdarailway.railway.RegionPos;
 
 import java.util.*;
+import java.util.function.Supplier;
 
 import static com.hxzhitang.tongdarailway.Tongdarailway.CHUNK_GROUP_SIZE;
 import static com.hxzhitang.tongdarailway.railway.RailwayMap.samplingNum;
 
-// οURL_ADDRESS// οhttps://www.redblobgames.com/pathfinding/a-star/introduction.html
+// 参考：URL_ADDRESS// 参考：https://www.redblobgames.com/pathfinding/a-star/introduction.html
 public class AStarPathfinder {
 
-    // ƶķϡ¡ҡϡϡ¡
-    private static final int[][] DIRECTIONS = {
-            {-1, 0}, {1, 0}, {0, -1}, {0, 1},    // 
-            {-1, -1}, {-1, 1}, {1, -1}, {1, 1}    // б
+    // 八向移动的方向：上、下、左、右、左上、右上、左下、右下
+    static final int[][] DIRECTIONS = {
+            {-1, 0}, {1, 0}, {0, -1}, {0, 1},    // 上下左右
+            {-1, -1}, {-1, 1}, {1, -1}, {1, 1}    // 斜向
     };
 
-    // ƶģΪ1бΪ21.414
-    private static final double[] MOVEMENT_COST = {
-            1.0, 1.0, 1.0, 1.0,                  // 
-            1.414, 1.414, 1.414, 1.414           // б
+    // 移动损耗：上下左右为1，斜向为√2≈1.414
+    static final float[] MOVEMENT_COST = {
+            1.0f, 1.0f, 1.0f, 1.0f,                  // 上下左右
+            1.414f, 1.414f, 1.414f, 1.414f           // 斜向
     };
 
-    public static List<int[]> findPath(int[][] image, int[] start, int[] end, AdditionalCostFunction additionalCostFunction) {
-        if (image == null || image.length == 0 || image[0].length == 0) {
-            return new ArrayList<>();
+    // anytime模式每轮降低的ε
+    private static final float ANYTIME_EPSILON_STEP = 0.5f;
+
+    // 复用的搜索数组 避免每次寻路分配整张图大小的数组
+    private static final ArenaPool<SearchArena> ARENAS = new ArenaPool<>(SearchArena::new);
+    // 双向寻路的两个方向的数组
+    private static final ArenaPool<Frontier[]> BIDIRECTIONAL_ARENAS = new ArenaPool<>(() -> new Frontier[] {new Frontier(), new Frontier()});
+
+    /**
+     * 带预算的寻路 ε>1时为加权A*，开启anytime时按ARA*逐步降低ε改进路线
+     * 预算用尽时返回目前找到的最优路线；还未到达终点时返回离终点最近处的路线并以直线连到终点
+     * @param additionalCosts 每个格子的附加损耗 按格子编号(x * cols + y)索引
+     * @return 寻路结果 起点或终点不在图像范围内时路线为空
+     */
+    public static SearchResult search(TiledGrid image, int[] start, int[] end, int[] additionalCosts, SearchOptions options) {
+        return search(image, start, end, additionalCosts, options, null);
+    }
+
+    /**
+     * 带预算的寻路 用地标估计代价下界
+     * @param landmarks 地标启发函数 为null时只用欧几里得距离
+     */
+    public static SearchResult search(TiledGrid image, int[] start, int[] end, int[] additionalCosts, SearchOptions options, LandmarkHeuristic landmarks) {
+        if (image == null || image.rows() == 0 || image.cols() == 0) {
+            return SearchResult.EMPTY;
         }
+        SearchArena arena = ARENAS.acquire();
+        try {
+            return search(image, start, end, additionalCosts, options, landmarks, arena);
+        } finally {
+            ARENAS.release(arena);
+        }
+    }
 
-        int rows = image.length;
-        int cols = image[0].length;
+    private static SearchResult search(TiledGrid image, int[] start, int[] end, int[] additionalCosts,
+                                       SearchOptions options, LandmarkHeuristic landmarks, SearchArena arena) {
 
-        // ֤յǷͼΧ
+        int rows = image.rows();
+        int cols = image.cols();
+
+        // 验证起点和终点是否在图像范围内
         if (!isValidCoordinate(start[0], start[1], rows, cols) ||
                 !isValidCoordinate(end[0], end[1], rows, cols)) {
-            return new ArrayList<>();
+            return SearchResult.EMPTY;
         }
 
-        // ȶУfֵ
-        PriorityQueue<Node> openSet = new PriorityQueue<>(Comparator.comparingDouble(node -> node.f));
-
-        // ¼ÿڵgֵ㵽õʵʴۣ
-        double[][] gScore = new double[rows][cols];
-        for (double[] row : gScore) {
-            Arrays.fill(row, Double.MAX_VALUE);
-        }
+        long deadline = options.maxMillis() > 0 ? System.nanoTime() + options.maxMillis() * 1_000_000L : Long.MAX_VALUE;
+        long maxExpansions = options.maxExpansions() > 0 ? options.maxExpansions() : Long.MAX_VALUE;
+
+        // 格子编号 index = x * cols + y
+        arena.begin(rows * cols);
+        float[] gScore = arena.gScore;
+        int[] cameFrom = arena.cameFrom;
+        IndexedFloatHeap openSet = arena.openSet;
+
+        int endX = end[0];
+        int endY = end[1];
+        int startIndex = start[0] * cols + start[1];
+        int endIndex = endX * cols + endY;
+        float epsilon = (float) Math.max(1, options.epsilon());
+        LandmarkHeuristic.Goal goal = landmarks != null ? landmarks.toward(endIndex) : null;
+
+        // 初始化起点
+        arena.touch(startIndex);
+        gScore[startIndex] = 0;
+        cameFrom[startIndex] = -1;
+        openSet.push(startIndex, epsilon * estimate(start[0], start[1], startIndex, endX, endY, goal));
+
+        List<int[]> bestPath = null;
+        double bestCost = Double.POSITIVE_INFINITY;
+        double bestBound = Double.POSITIVE_INFINITY;
+        int closest = startIndex;   // 离终点最近的已扩展格子
+        float closestH = heuristic(start[0], start[1], endX, endY);
+        long expansions = 0;
+        boolean budgetExhausted = false;
+
+        while (true) {
+            arena.nextIteration();
+            // 一轮搜索 直到终点的代价不大于开放集合中的最小键值
+            while (!openSet.isEmpty() && !(arena.isTouched(endIndex) && gScore[endIndex] <= openSet.peekKey())) {
+                if (expansions >= maxExpansions || (expansions & 1023) == 0 && System.nanoTime() > deadline) {
+                    budgetExhausted = true;
+                    break;
+                }
 
-        // ¼ÿڵĸڵ㣬ؽ·
-        Node[][] cameFrom = new Node[rows][cols];
+                int current = openSet.poll();
+                arena.close(current);
+                expansions++;
+
+                int currentX = current / cols;
+                int currentY = current - currentX * cols;
+                float currentG = gScore[current];
+                int currentHeight = image.get(currentX, currentY);
+                // 附加损耗只与当前格子有关 每次扩展只计算一次
+                float additionalCost = additionalCosts[current];
+
+                float h = heuristic(currentX, currentY, endX, endY);
+                if (h < closestH) {
+                    closestH = h;
+                    closest = current;
+                }
 
-        // ʼ
-        Node startNode = new Node(start[0], start[1]);
-        startNode.g = 0;
-        startNode.h = heuristic(start, end);
-        startNode.f = startNode.g + startNode.h;
+                // 检查所有可能的移动方向
+                for (int i = 0; i < DIRECTIONS.length; i++) {
+                    int newX = currentX + DIRECTIONS[i][0];
+                    int newY = currentY + DIRECTIONS[i][1];
 
-        gScore[start[0]][start[1]] = 0;
-        openSet.offer(startNode);
+                    // 检查新坐标是否有效
+                    if (!isValidCoordinate(newX, newY, rows, cols)) {
+                        continue;
+                    }
 
-        // ¼ڵǷڿż
-        boolean[][] inOpenSet = new boolean[rows][cols];
-        inOpenSet[start[0]][start[1]] = true;
+                    // 计算移动代价
+                    int neighbor = newX * cols + newY;
+                    float pixelCost = Math.abs(currentHeight - image.get(newX, newY));
+                    float tentativeG = currentG + MOVEMENT_COST[i] + pixelCost + additionalCost;
+
+                    // 如果找到更优路径
+                    if (!arena.isTouched(neighbor) || tentativeG < gScore[neighbor]) {
+                        arena.touch(neighbor);
+                        gScore[neighbor] = tentativeG;
+                        cameFrom[neighbor] = current;
+                        if (!arena.isClosed(neighbor)) {
+                            openSet.push(neighbor, tentativeG + epsilon * estimate(newX, newY, neighbor, endX, endY, goal));
+                        } else {
+                            // 本轮已扩展过的格子 留到下一轮再扩展
+                            arena.markInconsistent(neighbor);
+                        }
+                    }
+                }
+            }
 
-        while (!openSet.isEmpty()) {
-            Node current = openSet.poll();
-            int currentX = current.x;
-            int currentY = current.y;
+            if (arena.isTouched(endIndex) && gScore[endIndex] < bestCost) {
+                bestCost = gScore[endIndex];
+                bestPath = reconstructPath(cameFrom, endIndex, cols);
+                // 次优上界 路线代价 / 未扩展格子的最小 g+h
+                float minF = arena.minUnexpandedF(gScore, cols, endX, endY, goal);
+                bestBound = Math.max(1, Math.min(epsilon, minF > 0 ? bestCost / minF : epsilon));
+            }
 
-            // յ㣬ؽ·
-            if (currentX == end[0] && currentY == end[1]) {
-                return reconstructPath(cameFrom, current);
+            if (budgetExhausted || !options.anytime() || epsilon <= 1 || bestPath == null || bestBound <= 1) {
+                break;
             }
 
-            inOpenSet[currentX][currentY] = false;
+            // 降低ε 未一致的格子重新加入开放集合
+            epsilon = Math.max(1, epsilon - ANYTIME_EPSILON_STEP);
+            arena.rekey(gScore, epsilon, cols, endX, endY, goal);
+        }
 
-            // пܵƶ
-            for (int i = 0; i < DIRECTIONS.length; i++) {
-                int[] direction = DIRECTIONS[i];
-                int newX = currentX + direction[0];
-                int newY = currentY + direction[1];
+        if (bestPath != null) {
+            return new SearchResult(bestPath, bestCost, bestBound, expansions, true, budgetExhausted);
+        }
 
-                // ǷЧ
-                if (!isValidCoordinate(newX, newY, rows, cols)) {
-                    continue;
-                }
+        // 还没到达终点 先走到离终点最近处再直线连到终点
+        List<int[]> partial = reconstructPath(cameFrom, closest, cols);
+        partial.removeLast();
+        partial.addAll(straightLine(new int[]{closest / cols, closest % cols}, end));
+        return new SearchResult(partial, Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY, expansions, false, budgetExhausted);
+    }
 
-                // ƶ
-                double movementCost = MOVEMENT_COST[i];
-                double pixelCost = Math.abs(image[currentX][currentY] - image[newX][newY]);
-                double tentativeG = current.g + movementCost + pixelCost + additionalCostFunction.cost(currentX, currentY);
+    /**
+     * 双向寻路 从起点和终点同时向中间搜索
+     * 两个方向使用平均势函数 p(v) = (h(v,终点) - h(v,起点)) / 2，两边开放集合的最小键值之和不小于已找到的最短相遇路线时即为最优
+     * 在一个线程上交替扩展开放集合较小的一边 同一输入总是得到同一条路线
+     * 只求最优路线 options中的ε和anytime不起作用，预算按两个方向合计
+     * @param additionalCosts 每个格子的附加损耗 按格子编号(x * cols + y)索引
+     */
+    public static SearchResult searchBidirectional(TiledGrid image, int[] start, int[] end, int[] additionalCosts, SearchOptions options) {
+        return searchBidirectional(image, start, end, additionalCosts, options, null);
+    }
 
-                // ҵ·
-                if (tentativeG < gScore[newX][newY]) {
-                    Node neighbor = new Node(newX, newY);
-                    neighbor.g = tentativeG;
-                    neighbor.h = heuristic(new int[]{newX, newY}, end);
-                    neighbor.f = neighbor.g + neighbor.h;
+    /**
+     * 双向寻路 用地标估计代价下界
+     * @param landmarks 地标启发函数 为null时只用欧几里得距离
+     */
+    public static SearchResult searchBidirectional(TiledGrid image, int[] start, int[] end, int[] additionalCosts, SearchOptions options, LandmarkHeuristic landmarks) {
+        if (image == null || image.rows() == 0 || image.cols() == 0) {
+            return SearchResult.EMPTY;
+        }
 
-                    cameFrom[newX][newY] = current;
-                    gScore[newX][newY] = tentativeG;
+        int rows = image.rows();
+        int cols = image.cols();
+        if (!isValidCoordinate(start[0], start[1], rows, cols) ||
+                !isValidCoordinate(end[0], end[1], rows, cols)) {
+            return SearchResult.EMPTY;
+        }
 
-                    if (!inOpenSet[newX][newY]) {
-                        openSet.offer(neighbor);
-                        inOpenSet[newX][newY] = true;
-                    }
-                }
+        int startIndex = start[0] * cols + start[1];
+        int endIndex = end[0] * cols + end[1];
+        if (startIndex == endIndex) {
+            return new SearchResult(List.of(new int[]{start[0], start[1]}), 0, 1, 0, true, false);
+        }
+
+        Frontier[] frontiers = BIDIRECTIONAL_ARENAS.acquire();
+        try {
+            return searchBidirectional(image, start, end, additionalCosts, options, landmarks, frontiers);
+        } finally {
+            frontiers[0].end();
+            frontiers[1].end();
+            BIDIRECTIONAL_ARENAS.release(frontiers);
+        }
+    }
+
+    private static SearchResult searchBidirectional(TiledGrid image, int[] start, int[] end, int[] additionalCosts, SearchOptions options,
+                                                    LandmarkHeuristic landmarks, Frontier[] frontiers) {
+        int cols = image.cols();
+        int startIndex = start[0] * cols + start[1];
+        int endIndex = end[0] * cols + end[1];
+        Frontier forward = frontiers[0];
+        Frontier reverse = frontiers[1];
+        BidirectionalSearch search = new BidirectionalSearch(image, additionalCosts, forward, reverse, options);
+        LandmarkHeuristic.Goal towardEnd = landmarks != null ? landmarks.toward(endIndex) : null;
+        LandmarkHeuristic.Goal fromStart = landmarks != null ? landmarks.from(startIndex) : null;
+        forward.begin(search, true, startIndex, endIndex, reverse, towardEnd, fromStart);
+        reverse.begin(search, false, endIndex, startIndex, forward, fromStart, towardEnd);
+
+        // 在本线程上交替扩展 结果只取决于输入，不取决于线程的快慢
+        while (!search.shouldStop()) {
+            Frontier next = forward.open.size() <= reverse.open.size() ? forward : reverse;
+            next.expand();
+        }
+
+        long expansions = forward.expansions + reverse.expansions;
+        int meet = search.meet;
+        if (meet >= 0) {
+            // 起点到相遇格子 再沿反向的父格子走到终点
+            List<int[]> path = reconstructPath(forward.parent, meet, cols);
+            for (int cell = reverse.parent[meet]; cell != -1; cell = reverse.parent[cell]) {
+                path.add(new int[]{cell / cols, cell % cols});
             }
+            float lowerBound = forward.topKey + reverse.topKey;
+            double bound = search.budgetExhausted && lowerBound > 0 ? Math.max(1, search.mu / lowerBound) : 1;
+            return new SearchResult(path, search.mu, bound, expansions, true, search.budgetExhausted);
         }
 
-        // żΪδյ㣬˵·
-        return new ArrayList<>();
+        // 两边还没相遇 先走到正向离终点最近处再直线连到终点
+        List<int[]> partial = reconstructPath(forward.parent, forward.closest, cols);
+        partial.remove(partial.size() - 1);
+        partial.addAll(straightLine(new int[]{forward.closest / cols, forward.closest % cols}, end));
+        return new SearchResult(partial, Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY, expansions, false, search.budgetExhausted);
     }
 
-    // ǷЧ
+    /**
+     * 两点之间的直线 寻路失败时的兜底路线
+     */
+    public static List<int[]> straightLine(int[] start, int[] end) {
+        List<int[]> line = new ArrayList<>();
+        int dx = end[0] - start[0];
+        int dy = end[1] - start[1];
+        int steps = Math.max(Math.abs(dx), Math.abs(dy));
+        for (int i = 0; i <= steps; i++) {
+            double t = steps == 0 ? 0 : (double) i / steps;
+            line.add(new int[]{start[0] + (int) Math.round(dx * t), start[1] + (int) Math.round(dy * t)});
+        }
+        return line;
+    }
+
+    // 检查坐标是否有效
     private static boolean isValidCoordinate(int x, int y, int rows, int cols) {
         return x >= 0 && x < rows && y >= 0 && y < cols;
     }
 
-    // ʽʹŷþ
-    private static double heuristic(int[] a, int[] b) {
-        int dx = Math.abs(a[0] - b[0]);
-        int dy = Math.abs(a[1] - b[1]);
-        return Math.sqrt(dx * dx + dy * dy);
+    // 启发式函数：使用欧几里得距离
+    static float heuristic(int ax, int ay, int bx, int by) {
+        int dx = ax - bx;
+        int dy = ay - by;
+        return (float) Math.sqrt(dx * dx + dy * dy);
     }
 
-    // ؽ·
-    private static List<int[]> reconstructPath(Node[][] cameFrom, Node current) {
+    // 到终点的代价估计 有地标时取欧几里得距离和地标下界中较大的一个
+    static float estimate(int x, int y, int cell, int endX, int endY, LandmarkHeuristic.Goal goal) {
+        float h = heuristic(x, y, endX, endY);
+        return goal != null ? Math.max(h, goal.estimate(cell)) : h;
+    }
+
+    // 重建路径
+    static List<int[]> reconstructPath(int[] cameFrom, int current, int cols) {
         List<int[]> path = new ArrayList<>();
 
-        // յ㷴׷ٵ
-        while (current != null) {
-            path.add(0, new int[]{current.x, current.y});
-            current = cameFrom[current.x][current.y];
+        // 从终点反向追踪到起点
+        while (current != -1) {
+            path.add(new int[]{current / cols, current % cols});
+            current = cameFrom[current];
         }
+        Collections.reverse(path);
 
         return path;
     }
 
-    // ڵ
-    static class Node {
-        int x, y;
-        double g; // 㵽ýڵʵʴ
-        double h; // ʽƴ
-        double f; // ܴ f = g + h
+    // 复用对象的池 不归某个线程所有，用完放回；最多保留规划线程数份，多出的直接丢弃
+    private static final class ArenaPool<T> {
+        private final Supplier<T> factory;
+        private final ArrayDeque<T> idle = new ArrayDeque<>();
+
+        ArenaPool(Supplier<T> factory) {
+            this.factory = factory;
+        }
+
+        T acquire() {
+            synchronized (this) {
+                T arena = idle.pollLast();
+                if (arena != null)
+                    return arena;
+            }
+            return factory.get();
+        }
+
+        void release(T arena) {
+            int limit = PlannerPool.get().getParallelism();
+            synchronized (this) {
+                if (idle.size() < limit)
+                    idle.addLast(arena);
+            }
+        }
+    }
+
+    // 搜索用的数组 按格子编号索引 用访问标记代替每次清空
+    private static class SearchArena {
+        float[] gScore = new float[0];   // 从起点到该格子的实际代价
+        int[] cameFrom = new int[0];     // 父格子编号
+        int[] visited = new int[0];      // 本次搜索访问过的格子记为当前轮次
+        int[] closed = new int[0];       // 本轮扩展过的格子记为当前迭代
+        int[] inconsistentMark = new int[0]; // 本轮加入未一致集合的格子记为当前迭代
+        int[] inconsistent = new int[0]; // 已扩展后又被改进的格子
+        int inconsistentSize = 0;
+        int round = 0;
+        int iteration = 0;
+        final IndexedFloatHeap openSet = new IndexedFloatHeap();
+
+        void begin(int cells) {
+            if (visited.length < cells) {
+                gScore = new float[cells];
+                cameFrom = new int[cells];
+                visited = new int[cells];
+                closed = new int[cells];
+                inconsistentMark = new int[cells];
+                round = 0;
+                iteration = 0;
+            }
+            openSet.ensureCapacity(cells);
+            openSet.clear();
+            inconsistentSize = 0;
+            if (++round == Integer.MAX_VALUE) {
+                Arrays.fill(visited, 0);
+                round = 1;
+            }
+        }
+
+        void nextIteration() {
+            if (++iteration == Integer.MAX_VALUE) {
+                Arrays.fill(closed, 0);
+                Arrays.fill(inconsistentMark, 0);
+                iteration = 1;
+            }
+        }
+
+        boolean isTouched(int cell) {
+            return visited[cell] == round;
+        }
+
+        void touch(int cell) {
+            visited[cell] = round;
+        }
+
+        boolean isClosed(int cell) {
+            return closed[cell] == iteration;
+        }
+
+        void close(int cell) {
+            closed[cell] = iteration;
+        }
+
+        void markInconsistent(int cell) {
+            if (inconsistentMark[cell] == iteration)
+                return;
+            inconsistentMark[cell] = iteration;
+            if (inconsistentSize == inconsistent.length)
+                inconsistent = Arrays.copyOf(inconsistent, Math.max(64, inconsistentSize * 2));
+            inconsistent[inconsistentSize++] = cell;
+        }
+
+        // 开放集合和未一致集合中最小的 g+h
+        float minUnexpandedF(float[] gScore, int cols, int endX, int endY, LandmarkHeuristic.Goal goal) {
+            float min = Float.POSITIVE_INFINITY;
+            for (int i = 0; i < openSet.size(); i++) {
+                min = Math.min(min, f(openSet.get(i), gScore, 1, cols, endX, endY, goal));
+            }
+            for (int i = 0; i < inconsistentSize; i++) {
+                min = Math.min(min, f(inconsistent[i], gScore, 1, cols, endX, endY, goal));
+            }
+            return min;
+        }
+
+        // 用新的ε重建开放集合
+        void rekey(float[] gScore, float epsilon, int cols, int endX, int endY, LandmarkHeuristic.Goal goal) {
+            int[] cells = Arrays.copyOf(inconsistent, inconsistentSize + openSet.size());
+            int n = inconsistentSize;
+            while (!openSet.isEmpty()) {
+                cells[n++] = openSet.poll();
+            }
+            inconsistentSize = 0;
+            for (int i = 0; i < n; i++) {
+                openSet.push(cells[i], f(cells[i], gScore, epsilon, cols, endX, endY, goal));
+            }
+        }
+
+        private static float f(int cell, float[] gScore, float epsilon, int cols, int endX, int endY, LandmarkHeuristic.Goal goal) {
+            int x = cell / cols;
+            return gScore[cell] + epsilon * estimate(x, cell - x * cols, cell, endX, endY, goal);
+        }
+    }
+
+    // 双向寻路两个方向共享的状态
+    private static class BidirectionalSearch {
+        final TiledGrid image;
+        final int[] additionalCosts;
+        final int cols;
+        final Frontier forward, reverse;
+        final long deadline;
+        final long maxExpansions;
+
+        float mu = Float.POSITIVE_INFINITY;   // 已找到的最短相遇路线代价
+        int meet = -1;                        // 该路线的相遇格子
+        boolean stopped = false;
+        boolean budgetExhausted = false;
+
+        BidirectionalSearch(TiledGrid image, int[] additionalCosts, Frontier forward, Frontier reverse, SearchOptions options) {
+            this.image = image;
+            this.additionalCosts = additionalCosts;
+            this.cols = image.cols();
+            this.forward = forward;
+            this.reverse = reverse;
+            this.deadline = options.maxMillis() > 0 ? System.nanoTime() + options.maxMillis() * 1_000_000L : Long.MAX_VALUE;
+            this.maxExpansions = options.maxExpansions() > 0 ? options.maxExpansions() : Long.MAX_VALUE;
+        }
+
+        boolean shouldStop() {
+            if (stopped)
+                return true;
+            if (forward.topKey + reverse.topKey >= mu) {
+                stopped = true;
+                return true;
+            }
+            long expansions = forward.expansions + reverse.expansions;
+            if (expansions >= maxExpansions || deadline != Long.MAX_VALUE && System.nanoTime() > deadline) {
+                budgetExhausted = true;
+                stopped = true;
+                return true;
+            }
+            return false;
+        }
+
+        // 代价相同时取编号小的格子
+        void offer(float cost, int cell) {
+            if (cost < mu || cost == mu && cell < meet) {
+                mu = cost;
+                meet = cell;
+            }
+        }
+    }
+
+    // 双向寻路中一个方向的搜索
+    private static class Frontier {
+        float[] gScore = new float[0];
+        int[] parent = new int[0];      // 正向为来自的格子 反向为通往终点的下一个格子
+        boolean[] closed = new boolean[0];
+        final IndexedFloatHeap open = new IndexedFloatHeap();
+
+        BidirectionalSearch search;
+        Frontier other;
+        boolean forward;
+        int sourceX, sourceY, targetX, targetY;
+        LandmarkHeuristic.Goal toTarget;   // 本方向到目标的下界
+        LandmarkHeuristic.Goal toSource;   // 另一方向到其目标(本方向起点)的下界
+        int closest;             // 离目标最近的已扩展格子
+        float closestH;
+        float topKey;   // 开放集合中的最小键值 空时为无穷大
+        long expansions;
+
+        void begin(BidirectionalSearch search, boolean forward, int source, int target, Frontier other,
+                   LandmarkHeuristic.Goal toTarget, LandmarkHeuristic.Goal toSource) {
+            int cells = search.image.rows() * search.cols;
+            if (gScore.length < cells) {
+                gScore = new float[cells];
+                parent = new int[cells];
+                closed = new boolean[cells];
+            }
+            Arrays.fill(gScore, 0, cells, Float.POSITIVE_INFINITY);
+            Arrays.fill(closed, 0, cells, false);
+            open.ensureCapacity(cells);
+            open.clear();
+
+            this.search = search;
+            this.other = other;
+            this.forward = forward;
+            this.toTarget = toTarget;
+            this.toSource = toSource;
+            int cols = search.cols;
+            sourceX = source / cols;
+            sourceY = source % cols;
+            targetX = target / cols;
+            targetY = target % cols;
+            closest = source;
+            closestH = heuristic(sourceX, sourceY, targetX, targetY);
+            expansions = 0;
+
+            gScore[source] = 0;
+            parent[source] = -1;
+            open.push(source, potential(sourceX, sourceY, source));
+            topKey = open.peekKey();
+        }
+
+        // 放回池中前调用 不再引用本次寻路的图和附加损耗
+        void end() {
+            search = null;
+            other = null;
+            toTarget = null;
+            toSource = null;
+        }
+
+        // 平均势函数 两个方向互为相反数 保证两边的停止条件一致
+        float potential(int x, int y, int cell) {
+            return (estimate(x, y, cell, targetX, targetY, toTarget) - estimate(x, y, cell, sourceX, sourceY, toSource)) * 0.5f;
+        }
+
+        void expand() {
+            if (open.isEmpty()) {
+                topKey = Float.POSITIVE_INFINITY;
+                return;
+            }
+
+            TiledGrid image = search.image;
+            int[] additionalCosts = search.additionalCosts;
+            int rows = image.rows();
+            int cols = search.cols;
+            float[] otherScores = other.gScore;
+
+            int current = open.poll();
+            closed[current] = true;
+
+            int currentX = current / cols;
+            int currentY = current - currentX * cols;
+            float currentG = gScore[current];
+            int currentHeight = image.get(currentX, currentY);
+            float h = heuristic(currentX, currentY, targetX, targetY);
+            if (h < closestH) {
+                closestH = h;
+                closest = current;
+            }
+
+            for (int i = 0; i < DIRECTIONS.length; i++) {
+                int newX = currentX + DIRECTIONS[i][0];
+                int newY = currentY + DIRECTIONS[i][1];
+                if (!isValidCoordinate(newX, newY, rows, cols)) {
+                    continue;
+                }
+                int neighbor = newX * cols + newY;
+                if (closed[neighbor]) {
+                    continue;
+                }
+
+                // 附加损耗属于路线上走出的格子 反向时是邻格
+                float pixelCost = Math.abs(currentHeight - image.get(newX, newY));
+                float additionalCost = forward ? additionalCosts[current] : additionalCosts[neighbor];
+                float tentativeG = currentG + MOVEMENT_COST[i] + pixelCost + additionalCost;
+                if (tentativeG < gScore[neighbor]) {
+                    gScore[neighbor] = tentativeG;
+                    parent[neighbor] = current;
+                    open.push(neighbor, tentativeG + potential(newX, newY, neighbor));
+
+                    // 另一边已到达过该格子 得到一条相遇路线
+                    float otherG = otherScores[neighbor];
+                    if (otherG != Float.POSITIVE_INFINITY) {
+                        search.offer(tentativeG + otherG, neighbor);
+                    }
+                }
+            }
+
+            topKey = open.isEmpty() ? Float.POSITIVE_INFINITY : open.peekKey();
+            expansions++;
+        }
+    }
 
-        Node(int x, int y) {
-            this.x = x;
-            this.y = y;
+    /**
+     * 寻路参数
+     * @param epsilon 启发函数放大系数 1为最优路线
+     * @param anytime 是否在预算内逐步降低ε改进路线
+     * @param maxExpansions 最大扩展格子数 0为不限
+     * @param maxMillis 最大寻路时间 0为不限
+     */
+    public record SearchOptions(double epsilon, boolean anytime, long maxExpansions, long maxMillis) {
+        public static final SearchOptions OPTIMAL = new SearchOptions(1, false, 0, 0);
+
+        public static SearchOptions fromConfig() {
+            return new SearchOptions(Config.pathSearchEpsilon, Config.pathSearchAnytime,
+                    Config.pathSearchMaxExpansions, Config.pathSearchMaxMillis);
         }
     }
 
-    //
-    @FunctionalInterface
-    public interface AdditionalCostFunction {
-        double cost(int x, int y);
+    /**
+     * 寻路结果
+     * @param path 路线 按格子坐标从起点到终点
+     * @param cost 路线代价 未到达终点时为无穷大
+     * @param suboptimality 路线代价最多是最优路线的多少倍 未到达终点时为无穷大
+     * @param expansions 扩展的格子数
+     * @param complete 是否找到了到终点的路线
+     * @param budgetExhausted 是否因预算用尽而停止
+     */
+    public record SearchResult(List<int[]> path, double cost, double suboptimality, long expansions,
+                               boolean complete, boolean budgetExhausted) {
+        public static final SearchResult EMPTY = new SearchResult(List.of(), Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY, 0, false, false);
     }
 
     public static int[] world2PicPos(int[] worldPos, RegionPos centerRegionPos) {
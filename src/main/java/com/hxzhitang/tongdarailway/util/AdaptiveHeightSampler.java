@@ -1,25 +1,22 @@
 package com.hxzhitang.tongdarailway.util;
 
-import java.util.concurrent.*;
+import java.util.concurrent.RecursiveAction;
 
 public class AdaptiveHeightSampler {
-    private final double threshold;          // ֵ
-    private final int maxLevel;             // 
-    private final int samplesPerNode;       // ÿڵ (n x n)
-    private QuadTree root;            // Ĳڵ
-    private final ExecutorService executor; // ̳߳
+    private final double threshold;          // 极差阈值
+    private final int maxLevel;             // 最大层数
+    private final int samplesPerNode;       // 每个节点采样点数 (n x n)
+    private QuadTree root;            // 四叉树根节点
     private final HeightFunction heightFunction;
-    private CountDownLatch latch = null;
-    int count = 0;
 
-    // Ĳڵ
+    // 四叉树节点类
     private class QuadTree {
-        double minX, minZ, maxX, maxZ; // ڵ߽
-        int level;                     // ڵ㼶
-        double minHeight, maxHeight;   // ߶ȷΧ
-        QuadTree[] children;           // ĸӽڵ
-        boolean isLeaf;                // ǷΪҶڵ
-        double[][] heightSamples;      // ߶ֵ
+        double minX, minZ, maxX, maxZ; // 节点边界
+        int level;                     // 节点层级
+        double minHeight, maxHeight;   // 高度范围
+        QuadTree[] children;           // 四个子节点
+        boolean isLeaf;                // 是否为叶节点
+        double[][] heightSamples;      // 采样点高度值
 
         QuadTree(double minX, double minZ, double maxX, double maxZ, int level) {
             this.minX = minX;
@@ -32,60 +29,54 @@ public class AdaptiveHeightSampler {
         }
     }
 
-    // 캯
+    // 构造函数
     public AdaptiveHeightSampler(double threshold, int maxLevel, int samplesPerNode, HeightFunction heightFunction) {
         this.threshold = threshold;
         this.maxLevel = maxLevel;
         this.samplesPerNode = samplesPerNode;
         this.heightFunction = heightFunction;
-        // ̶С̳߳أCPU
-        int coreCount = Runtime.getRuntime().availableProcessors();
-        this.executor = Executors.newFixedThreadPool(coreCount);
     }
 
     /**
-     * ӦĲ
-     * @param regionSize С (߳)
+     * 构建自适应四叉树
+     * @param regionSize 区域大小 (正方形区域边长)
      */
-    public void buildQuadTree(double regionSize) throws InterruptedException {
-        latch = new CountDownLatch(1);
-        addCount();
+    public void buildQuadTree(double regionSize) {
         root = new QuadTree(0, 0, regionSize, regionSize, 0);
-        buildNode(root);
-        latch.await();
+        PlannerPool.invoke(new BuildNodeTask(root));
     }
 
     /**
-     * ݹ鹹Ĳڵ
+     * 递归构建四叉树节点 四个子节点作为子任务并行处理
      */
-    private void buildNode(QuadTree node) {
-        // ǰڵ
-        sampleNode(node);
+    private class BuildNodeTask extends RecursiveAction {
+        private final QuadTree node;
 
-        // ǷҪָ
-        if (shouldSplit(node)) {
-            splitNode(node);
-
-            // ʹö̲߳дĸӽڵ
-            processChildrenInParallel(node);
+        BuildNodeTask(QuadTree node) {
+            this.node = node;
         }
-        subCount();
-    }
 
-    /**
-     * ʹö̲߳дĸӽڵ
-     */
-    private void processChildrenInParallel(QuadTree parent) {
-        // Ϊÿӽڵύ̳߳
-        for (int i = 0; i < 4; i++) {
-            addCount();
-            final QuadTree child = parent.children[i];
-            executor.submit(() -> buildNode(child));
+        @Override
+        protected void compute() {
+            // 采样当前节点
+            sampleNode(node);
+
+            // 检查是否需要继续分割
+            if (shouldSplit(node)) {
+                splitNode(node);
+
+                invokeAll(
+                        new BuildNodeTask(node.children[0]),
+                        new BuildNodeTask(node.children[1]),
+                        new BuildNodeTask(node.children[2]),
+                        new BuildNodeTask(node.children[3])
+                );
+            }
         }
     }
 
     /**
-     * Խڵв
+     * 对节点进行采样
      */
     private void sampleNode(QuadTree node) {
         int n = samplesPerNode;
@@ -110,21 +101,21 @@ public class AdaptiveHeightSampler {
     }
 
     /**
-     * жϽڵǷҪָ
+     * 判断节点是否需要分割
      */
     private boolean shouldSplit(QuadTree node) {
-        // ﵽٷָ
+        // 达到最大层数则不再分割
         if (node.level >= maxLevel) {
             return false;
         }
 
-        // ֵҪָ
+        // 极差大于阈值则需要分割
         double range = node.maxHeight - node.minHeight;
         return range > threshold;
     }
 
     /**
-     * ָڵΪĸӽڵ
+     * 分割节点为四个子节点
      */
     private void splitNode(QuadTree node) {
         node.isLeaf = false;
@@ -134,25 +125,25 @@ public class AdaptiveHeightSampler {
         double midZ = (node.minZ + node.maxZ) / 2.0;
         int nextLevel = node.level + 1;
 
-        // ĸӽڵ
-        node.children[0] = new QuadTree(node.minX, node.minZ, midX, midZ, nextLevel); // 
-        node.children[1] = new QuadTree(midX, node.minZ, node.maxX, midZ, nextLevel); // 
-        node.children[2] = new QuadTree(node.minX, midZ, midX, node.maxZ, nextLevel); // 
-        node.children[3] = new QuadTree(midX, midZ, node.maxX, node.maxZ, nextLevel); // 
+        // 创建四个子节点
+        node.children[0] = new QuadTree(node.minX, node.minZ, midX, midZ, nextLevel); // 左下
+        node.children[1] = new QuadTree(midX, node.minZ, node.maxX, midZ, nextLevel); // 右下
+        node.children[2] = new QuadTree(node.minX, midZ, midX, node.maxZ, nextLevel); // 左上
+        node.children[3] = new QuadTree(midX, midZ, node.maxX, node.maxZ, nextLevel); // 右上
     }
 
     /**
-     * ȡָλõĸ߶ֵҪûʵ֣
+     * 获取指定位置的高度值（需要用户实现）
      */
     public double getHeight(double x, double z) {
         return heightFunction.getHeight(x, z);
     }
 
     /**
-     * ָСĲֵͼ
-     * @param width ͼ
-     * @param height ͼ߶
-     * @return ߶ֵ飨תΪint
+     * 生成指定大小的插值图像
+     * @param width 图像宽度
+     * @param height 图像高度
+     * @return 高度值数组（已转换为int）
      */
     public int[][] generateImage(int width, int height) {
         int[][] image = new int[width][height];
@@ -171,37 +162,56 @@ public class AdaptiveHeightSampler {
     }
 
     /**
-     * ȡֵĸ߶ֵ
+     * 生成按 x * height + z 展平、相对基准高度的高度图
+     * @param base 基准高度 一般为世界最低建筑高度
+     */
+    public short[] generateCompactImage(int width, int height, int base) {
+        short[] image = new short[width * height];
+        double scaleX = root.maxX / width;
+        double scaleZ = root.maxZ / height;
+
+        for (int x = 0; x < width; x++) {
+            for (int z = 0; z < height; z++) {
+                int h = (int) getInterpolatedHeight(x * scaleX, z * scaleZ) - base;
+                image[x * height + z] = (short) Math.max(0, Math.min(Short.MAX_VALUE, h));
+            }
+        }
+
+        return image;
+    }
+
+    /**
+     * 获取插值后的高度值
      */
     private double getInterpolatedHeight(double x, double z) {
         return getHeightFromNode(root, x, z);
     }
 
     /**
-     * Ĳڵлȡ߶ֵݹ飩
+     * 从四叉树节点中获取高度值（递归）
      */
     private double getHeightFromNode(QuadTree node, double x, double z) {
         if (node.isLeaf) {
-            // Ҷڵн˫Բֵ
+            // 在叶节点中进行双线性插值
             return bilinearInterpolate(node, x, z);
         }
 
-        // ȷλĸӽڵ
+        // 确定点位于哪个子节点
         double midX = (node.minX + node.maxX) / 2.0;
         double midZ = (node.minZ + node.maxZ) / 2.0;
 
         int childIndex;
         if (x < midX) {
             if (z < midZ) {
-                childIndex = 0; // 
+                childIndex = 0; // 左下
             } else {
-                childIndex = 2; // 
+                childIndex = 2; // 左上
             }
         } else {
             if (z < midZ) {
-                childIndex = 1; // 
+                childIndex = 1; // 右下
             } else {
-                childIndex = 3; // 
+                childIndex = 3; // 右上
             }
         }
 
@@ -209,14 +219,14 @@ public class AdaptiveHeightSampler {
     }
 
     /**
-     * ˫Բֵ
+     * 双线性插值
      */
     private double bilinearInterpolate(QuadTree node, double x, double z) {
         int n = samplesPerNode;
         double stepX = (node.maxX - node.minX) / (n - 1);
         double stepZ = (node.maxZ - node.minZ) / (n - 1);
 
-        // ڲеλ
+        // 计算在采样网格中的位置
         double gridX = (x - node.minX) / stepX;
         double gridZ = (z - node.minZ) / stepZ;
 
@@ -225,14 +235,14 @@ public class AdaptiveHeightSampler {
         int x2 = Math.min(x1 + 1, n - 1);
         int z2 = Math.min(z1 + 1, n - 1);
 
-        // ߽
+        // 边界检查
         x1 = Math.max(0, x1);
         z1 = Math.max(0, z1);
 
         double dx = gridX - x1;
         double dz = gridZ - z1;
 
-        // ˫Բֵ
+        // 双线性插值
         double h1 = node.heightSamples[x1][z1];
         double h2 = node.heightSamples[x2][z1];
         double h3 = node.heightSamples[x1][z2];
@@ -247,24 +257,7 @@ public class AdaptiveHeightSampler {
     }
 
     /**
-     * ر̳߳
-     */
-    public void shutdown() {
-        if (executor != null && !executor.isShutdown()) {
-            executor.shutdown();
-            try {
-                if (!executor.awaitTermination(60, TimeUnit.SECONDS)) {
-                    executor.shutdownNow();
-                }
-            } catch (InterruptedException e) {
-                executor.shutdownNow();
-                Thread.currentThread().interrupt();
-            }
-        }
-    }
-
-    /**
-     * ȡĲͳϢ
+     * 获取四叉树统计信息
      */
     public void printStatistics() {
         Stats stats = new Stats();
@@ -291,16 +284,6 @@ public class AdaptiveHeightSampler {
         }
     }
 
-    private synchronized void addCount() {
-        count++;
-    }
-
-    private synchronized void subCount() {
-        count--;
-        if (count == 0)
-            latch.countDown();
-    }
-
     private static class Stats {
         int totalNodes = 0;
         int leafNodes = 0;
@@ -313,38 +296,30 @@ public class AdaptiveHeightSampler {
         double getHeight(double x, double z);
     }
 
-    // ʾ
+    // 测试示例
     /*
     public static void main(String[] args) {
-        // ֵ=5.0=6ÿڵ4x4
+        // 创建采样器：阈值=5.0，最大层数=6，每个节点4x4采样
         AdaptiveHeightSampler sampler = new AdaptiveHeightSampler(5.0, 6, 4, (x, z) ->{
-            // һʾʵʹʱӦ滻Ϊʵĸ߶Ⱥ
-            // 磺return Math.sin(x) * Math.cos(z) * 10;
+            // 这里是一个示例函数，实际使用时应该替换为真实的高度函数
+            // 例如：return Math.sin(x) * Math.cos(z) * 10;
             return Math.sin(x * 0.1) * Math.cos(z * 0.1) * 20 +
                     Math.sin(x * 0.05) * Math.cos(z * 0.03) * 10;
         });
 
-        try {
-            // ĲС100x100
-            long startTime = System.currentTimeMillis();
-            sampler.buildQuadTree(100.0);
-            long endTime = System.currentTimeMillis();
-
-            // ӡͳϢ
-            sampler.printStatistics();
-            System.out.println("ʱ: " + (endTime - startTime) + "ms");
+        // 构建四叉树，区域大小100x100
+        long startTime = System.currentTimeMillis();
+        sampler.buildQuadTree(100.0);
+        long endTime = System.currentTimeMillis();
 
-            // 512x512ͼ
-            int[][] heightMap = sampler.generateImage(512, 512);
+        // 打印统计信息
+        sampler.printStatistics();
+        System.out.println("构建时间: " + (endTime - startTime) + "ms");
 
-            System.out.println("ͼɣߴ: " + heightMap.length + "x" + heightMap[0].length);
-            System.out.println("ʾ߶ֵ: " + heightMap[256][256]);
+        // 生成512x512的图像
+        int[][] heightMap = sampler.generateImage(512, 512);
 
-        } catch (InterruptedException e) {
-            e.printStackTrace();
-        } finally {
-            // ȷر̳߳
-            sampler.shutdown();
-        }
+        System.out.println("图像生成完成，尺寸: " + heightMap.length + "x" + heightMap[0].length);
+        System.out.println("示例高度值: " + heightMap[256][256]);
     }*/
 }
\ No newline at end of file
@@ -0,0 +1,114 @@
+package com.hxzhitang.tongdarailway.util;
+
+import com.hxzhitang.tongdarailway.railway.RailwayMap;
+
+// 由粗到细寻路
+// 先在降采样的损耗图上寻路，再只在粗路线附近的带状区域内按原分辨率寻路
+// 带状区域之外和限制区域一样加上附加损耗，精细寻路仍然可以离开带状区域，只是代价很高
+public class CoarseToFinePathfinder {
+    private static final int BAND_RADIUS = 2;   // 粗路线两侧保留的粗格子数
+
+    private final TiledGrid image;
+    private final int factor;         // 每个粗格子包含 factor x factor 个格子
+    private final int rows, cols;
+    private final int coarseRows, coarseCols;
+    private final TiledGrid coarseImage;   // 粗格子内的平均高度
+
+    /**
+     * @param image 高度图
+     * @param factor 降采样倍数
+     */
+    public CoarseToFinePathfinder(TiledGrid image, int factor) {
+        this.image = image;
+        this.factor = Math.max(2, factor);
+        this.rows = image.rows();
+        this.cols = image.cols();
+        this.coarseRows = (rows + this.factor - 1) / this.factor;
+        this.coarseCols = (cols + this.factor - 1) / this.factor;
+
+        int[] coarseHeights = new int[coarseRows * coarseCols];
+        for (int cx = 0; cx < coarseRows; cx++) {
+            for (int cz = 0; cz < coarseCols; cz++) {
+                long sum = 0;
+                int count = 0;
+                for (int x = cx * this.factor; x < Math.min(rows, (cx + 1) * this.factor); x++) {
+                    for (int z = cz * this.factor; z < Math.min(cols, (cz + 1) * this.factor); z++) {
+                        sum += image.get(x, z);
+                        count++;
+                    }
+                }
+                coarseHeights[cx * coarseCols + cz] = (int) (sum / count);
+            }
+        }
+        coarseImage = TiledGrid.single(coarseRows, coarseCols, coarseHeights);
+    }
+
+    /**
+     * 由粗到细寻路
+     * @param additionalCosts 本次连接的附加损耗 会被修改
+     * @param options 精细寻路参数 粗寻路总是求最优
+     * @param landmarks 精细寻路的地标启发函数 可以为null
+     * @return 精细寻路的结果 扩展数包含粗寻路
+     */
+    public AStarPathfinder.SearchResult search(int[] start, int[] end, int[] additionalCosts,
+                                               AStarPathfinder.SearchOptions options, LandmarkHeuristic landmarks) {
+        if (start[0] < 0 || start[0] >= rows || start[1] < 0 || start[1] >= cols ||
+                end[0] < 0 || end[0] >= rows || end[1] < 0 || end[1] >= cols) {
+            return AStarPathfinder.SearchResult.EMPTY;
+        }
+
+        // 粗格子的附加损耗 取平均后按格子数放大，再补上粗格子内的移动代价
+        int[] coarseCosts = new int[coarseRows * coarseCols];
+        for (int cx = 0; cx < coarseRows; cx++) {
+            for (int cz = 0; cz < coarseCols; cz++) {
+                long sum = 0;
+                int count = 0;
+                for (int x = cx * factor; x < Math.min(rows, (cx + 1) * factor); x++) {
+                    int base = x * cols;
+                    for (int z = cz * factor; z < Math.min(cols, (cz + 1) * factor); z++) {
+                        sum += additionalCosts[base + z];
+                        count++;
+                    }
+                }
+                coarseCosts[cx * coarseCols + cz] = (int) Math.min(Integer.MAX_VALUE, sum * factor / count + factor - 1);
+            }
+        }
+
+        int[] coarseStart = {start[0] / factor, start[1] / factor};
+        int[] coarseEnd = {end[0] / factor, end[1] / factor};
+        var coarse = AStarPathfinder.search(coarseImage, coarseStart, coarseEnd, coarseCosts, AStarPathfinder.SearchOptions.OPTIMAL);
+        if (!coarse.complete()) {
+            return withCoarseExpansions(AStarPathfinder.search(image, start, end, additionalCosts, options, landmarks), coarse.expansions());
+        }
+
+        // 粗路线两侧的带状区域
+        boolean[] band = new boolean[coarseRows * coarseCols];
+        for (int[] p : coarse.path()) {
+            for (int cx = Math.max(0, p[0] - BAND_RADIUS); cx <= Math.min(coarseRows - 1, p[0] + BAND_RADIUS); cx++) {
+                for (int cz = Math.max(0, p[1] - BAND_RADIUS); cz <= Math.min(coarseCols - 1, p[1] + BAND_RADIUS); cz++) {
+                    band[cx * coarseCols + cz] = true;
+                }
+            }
+        }
+        for (int x = 0; x < rows; x++) {
+            int base = x * cols;
+            int coarseBase = (x / factor) * coarseCols;
+            for (int z = 0; z < cols; z++) {
+                if (!band[coarseBase + z / factor]) {
+                    additionalCosts[base + z] += RailwayMap.SCOPE_MAX_COST;
+                }
+            }
+        }
+
+        return withCoarseExpansions(AStarPathfinder.search(image, start, end, additionalCosts, options, landmarks), coarse.expansions());
+    }
+
+    public int getFactor() {
+        return factor;
+    }
+
+    private static AStarPathfinder.SearchResult withCoarseExpansions(AStarPathfinder.SearchResult result, long coarseExpansions) {
+        return new AStarPathfinder.SearchResult(result.path(), result.cost(), result.suboptimality(), result.expansions() + coarseExpansions,
+                result.complete(), result.budgetExhausted());
+    }
+}
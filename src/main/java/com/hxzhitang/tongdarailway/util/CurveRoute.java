@@ -11,25 +11,25 @@ import java.util.*;
 
 public class CurveRoute {
 
-    // ڲӿڣƬ
+    // 内部接口：曲线片段
     public interface CurveSegment {
         double getLength();
-        Vec3 getPointAt(double u); // u Χ [0, 1]
+        Vec3 getPointAt(double u); // u 范围 [0, 1]
         Vec3 getTangentAt(double u);
 
         List<Vec3> rasterize(int n);
     }
 
-    // ڲࣺϢ
+    // 内部类：采样点信息
     public static class SamplePoint {
         Vec3 position;
         Vec3 tangent;
-        double u;          // ڵǰƬڵĲ
-        int segmentIndex;  // Ƭ
-        double globalT;    // ϵĲ [0, 1]
+        double u;          // 在当前片段内的参数
+        int segmentIndex;  // 片段索引
+        double globalT;    // 在整条曲线上的参数 [0, 1]
 
         public SamplePoint(Vec3 pos, Vec3 tan, double u, int segmentIndex, double globalT) {
-            this.position = new Vec3(pos.x, 0, pos.z); // ǿ y Ϊ 0
+            this.position = new Vec3(pos.x, 0, pos.z); // 强制 y 为 0
             this.tangent = tan;
             this.u = u;
             this.segmentIndex = segmentIndex;
@@ -37,20 +37,26 @@ public class CurveRoute {
         }
     }
 
-    // --- Ա ---
+    // --- 成员变量 ---
     private final List<CurveSegment> segments = new ArrayList<>();
     private final List<SamplePoint> samplePoints = new ArrayList<>();
     private double totalLength = 0;
     private final int SAMPLES_PER_SEGMENT = 50;
     private KDNode kdTreeRoot;
 
-    // --- ķ ---
+    // --- 核心方法 ---
 
     public void addSegment(CurveSegment segment) {
         segments.add(segment);
         buildSamplePoints();
     }
 
+    // 一次加入多个片段 只重建一次采样点
+    public void addSegments(Collection<? extends CurveSegment> newSegments) {
+        segments.addAll(newSegments);
+        buildSamplePoints();
+    }
+
     public CurveSegment getSegment(int index) {
         return segments.get(index);
     }
@@ -63,7 +69,7 @@ public class CurveRoute {
         samplePoints.clear();
         totalLength = 0;
 
-        // ܳ
+        // 计算总长度
         for (CurveSegment seg : segments) {
             totalLength += seg.getLength();
         }
@@ -86,21 +92,21 @@ public class CurveRoute {
             accumulatedLength += segLen;
         }
 
-        // ڿٲҵ KD-Tree
+        // 构建用于快速查找的 KD-Tree
         kdTreeRoot = buildKDTree(new ArrayList<>(samplePoints), 0);
     }
 
     public Frame getFrame(Vec3 queryPoint) {
         Vec3 p = new Vec3(queryPoint.x, 0, queryPoint.z);
 
-        // 1. Ѱ
+        // 1. 寻找最近的样本点
         SamplePoint best = findNearestNeighbor(kdTreeRoot, p, 0, null);
 
-        // 2. ͬһƬѰҵڶĵ㣨ڲֵ
+        // 2. 在同一个片段上寻找第二近的点（用于插值）
         SamplePoint secondBest = findSecondNearestOnSameSegment(best, p);
 
         if (best != null && secondBest != null) {
-            // ͶӰֵ
+            // 计算投影插值比例
             Vec3 line = secondBest.position.subtract(best.position);
             double lineLenSq = line.lengthSqr();
             double factor = 0;
@@ -109,7 +115,7 @@ public class CurveRoute {
             }
             factor = Math.max(0, Math.min(1, factor));
 
-            // ֵ
+            // 插值计算结果
             Vec3 nearestPos = best.position.add(line.scale(factor));
             Vec3 nearestTan = best.tangent.add(secondBest.tangent.subtract(best.tangent).scale(factor)).normalize();
             double finalU = best.u + (secondBest.u - best.u) * factor;
@@ -124,9 +130,9 @@ public class CurveRoute {
 //            System.out.println("Point In Curve: " + segments.get(best.segmentIndex).getPointAt(finalU));
 //            System.out.println();
 
-            // Ѱҵ㲻άе
-            // Ǻy꣬xzƽ
-            // õĽӺ
+            // 这里寻找的曲线上最近点不是真正三维中的最近点
+            // 是忽略y坐标，仅考虑xz平面的最近点
+            // 这样得到的结果更加合理
             Vec3 resultPos = segments.get(best.segmentIndex).getPointAt(finalU);
 
             return new Frame(resultPos, nearestTan, finalT, finalU, best.segmentIndex);
@@ -135,7 +141,7 @@ public class CurveRoute {
         return null;
     }
 
-    // --- ڲʵࣺLineSegment ---
+    // --- 内部实现类：LineSegment ---
 
     public static class LineSegment implements CurveSegment {
         public final Vec3 start, end;
@@ -173,7 +179,7 @@ public class CurveRoute {
         }
     }
 
-    // --- ڲʵࣺBezierSegment (ױ) ---
+    // --- 内部实现类：BezierSegment (三阶贝塞尔) ---
 
     public static class BezierSegment implements CurveSegment {
         public final Vec3 p0, p1, p2, p3;
@@ -183,27 +189,27 @@ public class CurveRoute {
         }
 
         public static BezierSegment getCubicBezier(
-                Vec3 startPos,           // 
-                Vec3 startAxis,          // ߷
-                Vec3 endOffset,          // յƫ
-                Vec3 endAxis             // յ߷
+                Vec3 startPos,           // 起点坐标
+                Vec3 startAxis,          // 起点切线方向
+                Vec3 endOffset,          // 终点相对于起点的偏移
+                Vec3 endAxis             // 终点切线方向
         ) {
-//            // յľ
+//            // 计算终点的绝对坐标
             Vec3 endPos = startPos.add(endOffset);
 //
-//            // һ
+//            // 归一化轴向量
             Vec3 axis1 = startAxis.normalize();
             Vec3 axis2 = endAxis.normalize();
 //
-//            // ֱ
+//            // 计算控制手柄长度
             double handleLength = determineHandleLength(startPos, endPos, axis1, axis2);
 
 
-            // ĸƵ
-            Vec3 p0 = startPos;                                    // 
-            Vec3 p1 = startPos.add(axis1.scale(handleLength));    // һƵ
-            Vec3 p2 = endPos.add(axis2.scale(handleLength));      // ڶƵ
-            Vec3 p3 = endPos; // յ
+            // 计算四个控制点
+            Vec3 p0 = startPos;                                    // 起点
+            Vec3 p1 = startPos.add(axis1.scale(handleLength));    // 第一个控制点
+            Vec3 p2 = endPos.add(axis2.scale(handleLength));      // 第二个控制点
+            Vec3 p3 = endPos; // 终点
 
             return new BezierSegment(p0, p1, p2, p3);
         }
@@ -212,7 +218,7 @@ public class CurveRoute {
             Vec3 cross1 = axis1.cross(new Vec3(0, 1, 0));
             Vec3 cross2 = axis2.cross(new Vec3(0, 1, 0));
 
-            // ļн
+            // 计算两个轴向的夹角
             double a1 = Mth.atan2(-axis2.z, -axis2.x);
             double a2 = Mth.atan2(axis1.z, axis1.x);
             double angle = a1 - a2;
@@ -222,7 +228,7 @@ public class CurveRoute {
             if (Math.abs(circle - angle) < Math.abs(angle))
                 angle = circle - angle;
 
-            // ƽ
+            // 如果两个轴向平行
             if (Mth.equal(angle, 0)) {
                 double[] intersect = VecHelper.intersect(end1, end2, axis1, cross2, Direction.Axis.Y);
                 if (intersect != null) {
@@ -239,7 +245,7 @@ public class CurveRoute {
                 return end2.distanceTo(end1) / 3;
             }
 
-            // ƽ,ʹԲʽ
+            // 如果两个轴向不平行,使用圆弧公式计算
             double n = circle / angle;
             double factor = 4 / 3d * Math.tan(Math.PI / (2 * n));
             double[] intersect = VecHelper.intersect(end1, end2, cross1, cross2, Direction.Axis.Y);
@@ -268,7 +274,7 @@ public class CurveRoute {
         @Override
         public Vec3 getTangentAt(double t) {
             double u = 1 - t;
-            // һ׵ʽ: 3(1-t)^2(p1-p0) + 6(1-t)t(p2-p1) + 3t^2(p3-p2)
+            // 一阶导数公式: 3(1-t)^2(p1-p0) + 6(1-t)t(p2-p1) + 3t^2(p3-p2)
             Vec3 tan = p1.subtract(p0).scale(3 * u * u)
                     .add(p2.subtract(p1).scale(6 * u * t))
                     .add(p3.subtract(p2).scale(3 * t * t));
@@ -277,7 +283,7 @@ public class CurveRoute {
 
         @Override
         public double getLength() {
-            // ֵֽƳ
+            // 数值积分近似长度
             double length = 0;
             int steps = 20;
             Vec3 prev = getPointAt(0);
@@ -301,7 +307,7 @@ public class CurveRoute {
         }
     }
 
-    // --- KD-Tree ṹ㷨 ---
+    // --- KD-Tree 辅助结构与算法 ---
 
     private static class KDNode {
         SamplePoint point;
@@ -369,8 +375,8 @@ public class CurveRoute {
         public Frame(Vec3 pos, Vec3 tangent, double globalT, double localU, int segmentIndex) {
             this.nearestPoint = pos;
             this.tangent = tangent;
-            // ·УطҪyкԴ
-            // Ѱ㡢ȡϵı
+            // 在铺路任务中，许多地方都要对y进行忽略处理。
+            // 如寻找最近点、获取最近点上的标架
             this.tangent0 = new Vec3(tangent.x, 0, tangent.z).normalize();
             this.normal0 = new Vec3(0, 1, 0);
             this.binormal0 = tangent0.cross(normal0);
@@ -400,6 +406,11 @@ public class CurveRoute {
         return segments;
     }
 
+    // 估算占用的内存 采样点(含两个Vec3)和KD树节点占大头
+    public long estimateBytes() {
+        return 64L + segments.size() * 96L + samplePoints.size() * 160L;
+    }
+
     public ListTag toNBT() {
         ListTag curveTag = new ListTag();
         for (var segment : segments) {
@@ -420,20 +431,22 @@ public class CurveRoute {
 
     public static CurveRoute fromNBT(ListTag curveTag) {
         CurveRoute curve = new CurveRoute();
+        List<CurveSegment> segments = new ArrayList<>();
         for (int i = 0; i < curveTag.size(); i++) {
             ListTag parameters = curveTag.getList(i);
             if (parameters.size() == 2) {
                 Vec3 start = nbt2Vec((ListTag) parameters.get(0));
                 Vec3 end = nbt2Vec((ListTag) parameters.get(1));
-                curve.addSegment(new LineSegment(start, end));
+                segments.add(new LineSegment(start, end));
             } else if (parameters.size() == 4) {
                 Vec3 p0 = nbt2Vec((ListTag) parameters.get(0));
                 Vec3 p1 = nbt2Vec((ListTag) parameters.get(1));
                 Vec3 p2 = nbt2Vec((ListTag) parameters.get(2));
                 Vec3 p3 = nbt2Vec((ListTag) parameters.get(3));
-                curve.addSegment(new BezierSegment(p0, p1, p2, p3));
+                segments.add(new BezierSegment(p0, p1, p2, p3));
             }
         }
+        curve.addSegments(segments);
         return curve;
     }
 
@@ -453,10 +466,10 @@ public class CurveRoute {
     public static void main(String[] args) {
         CurveRoute route = new CurveRoute();
 
-        // 1. һ (0,0,0)  (10,0,0) ֱ
+        // 1. 添加一条从 (0,0,0) 到 (10,0,0) 的直线
         route.addSegment(new LineSegment(new Vec3(0, 0, 0), new Vec3(10, 10, 10)));
 
-        // 2. һα
+        // 2. 添加一段贝塞尔曲线
         route.addSegment(new BezierSegment(
                 new Vec3(10, 10, 10),
                 new Vec3(15, 15, 15),
@@ -466,7 +479,7 @@ public class CurveRoute {
 
         System.out.println("Total Curve Length: " + route.getTotalLength());
 
-        // 3. Ѱ
+        // 3. 测试寻找最近点
         System.out.println("\nTesting findNearestPoint for (5, 1, 0):");
         var test1 = new Vec3(5, 1, 0);
         var a = route.getFrame(test1);
@@ -483,7 +496,7 @@ public class CurveRoute {
         var vec2 = test2.subtract(b.nearestPoint);
         System.out.println(vec2.dot(b.tangent0));
 
-        // 4. Թդ (XZƽ)
+        // 4. 测试光栅化 (XZ平面)
         System.out.println("\nRasterizing segment 0 (n=2):");
         List<Vec3> raster = route.segments.get(1).rasterize(2);
         for (Vec3 p : raster) {
@@ -0,0 +1,148 @@
+package com.hxzhitang.tongdarailway.util;
+
+import net.minecraft.world.level.ChunkPos;
+
+import java.util.AbstractList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+
+// 只读的区块 -> 列表 索引
+// 键为ChunkPos.toLong()，开放寻址(线性探测)；所有区块的元素连续存放在一个数组中，每个区块对应其中的一段
+// 每段的只读列表在构建时生成，查询时不再分配对象
+// 构建后不再修改，所有字段为final，发布后可在任意线程无锁读取
+public final class FrozenChunkMap<T> {
+    private static final FrozenChunkMap<?> EMPTY = new FrozenChunkMap<>(Map.of());
+
+    private final int[] slots;      // 0为空 否则为区块序号+1
+    private final int mask;
+    private final long[] keys;      // [区块序号]
+    private final List<T>[] lists;  // [区块序号] 区块的元素 values中的一段
+    private final Object[] values;
+
+    @FunctionalInterface
+    public interface ChunkConsumer<T> {
+        void accept(long chunkKey, List<T> values);
+    }
+
+    @SuppressWarnings("unchecked")
+    private FrozenChunkMap(Map<ChunkPos, ? extends Collection<? extends T>> map) {
+        int count = map.size();
+        int capacity = Integer.highestOneBit(Math.max(4, count * 2 - 1)) << 1;   // 装载率不超过1/2
+        slots = new int[capacity];
+        mask = capacity - 1;
+        keys = new long[count];
+        lists = new List[count];
+        int total = 0;
+        for (Collection<? extends T> list : map.values()) {
+            total += list.size();
+        }
+        values = new Object[total];
+
+        int index = 0;
+        int offset = 0;
+        for (Map.Entry<ChunkPos, ? extends Collection<? extends T>> entry : map.entrySet()) {
+            long key = entry.getKey().toLong();
+            keys[index] = key;
+            int start = offset;
+            for (T value : entry.getValue()) {
+                values[offset++] = value;
+            }
+            lists[index] = new Slice<>(values, start, offset - start);
+            int slot = hash(key) & mask;
+            while (slots[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            slots[slot] = index + 1;
+            index++;
+        }
+    }
+
+    /**
+     * 复制为只读索引 复制期间map不应被修改
+     */
+    public static <T> FrozenChunkMap<T> copyOf(Map<ChunkPos, ? extends Collection<? extends T>> map) {
+        return map.isEmpty() ? empty() : new FrozenChunkMap<>(map);
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <T> FrozenChunkMap<T> empty() {
+        return (FrozenChunkMap<T>) EMPTY;
+    }
+
+    /**
+     * 区块中的元素
+     * @param chunkKey ChunkPos.toLong()
+     * @return 只读列表 没有时为空列表
+     */
+    public List<T> get(long chunkKey) {
+        int index = indexOf(chunkKey);
+        return index < 0 ? List.of() : lists[index];
+    }
+
+    public boolean containsKey(long chunkKey) {
+        return indexOf(chunkKey) >= 0;
+    }
+
+    public int size() {
+        return keys.length;
+    }
+
+    /**
+     * 按构建时的顺序遍历各区块
+     */
+    public void forEach(ChunkConsumer<T> action) {
+        for (int i = 0; i < keys.length; i++) {
+            action.accept(keys[i], lists[i]);
+        }
+    }
+
+    /**
+     * 所有区块的元素 按区块依次排列，同一元素在多个区块中时出现多次
+     */
+    public List<T> values() {
+        return new Slice<>(values, 0, values.length);
+    }
+
+    private int indexOf(long key) {
+        int slot = hash(key) & mask;
+        int entry;
+        while ((entry = slots[slot]) != 0) {
+            if (keys[entry - 1] == key)
+                return entry - 1;
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    private static int hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    private static final class Slice<T> extends AbstractList<T> implements RandomAccess {
+        private final Object[] values;
+        private final int from;
+        private final int size;
+
+        Slice(Object[] values, int from, int size) {
+            this.values = values;
+            this.from = from;
+            this.size = size;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public T get(int index) {
+            if (index < 0 || index >= size)
+                throw new IndexOutOfBoundsException(index);
+            return (T) values[from + index];
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+}
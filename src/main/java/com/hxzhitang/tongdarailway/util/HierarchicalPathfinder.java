@@ -0,0 +1,328 @@
+package com.hxzhitang.tongdarailway.util;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.IntToLongFunction;
+
+import static com.hxzhitang.tongdarailway.util.AStarPathfinder.DIRECTIONS;
+import static com.hxzhitang.tongdarailway.util.AStarPathfinder.MOVEMENT_COST;
+
+// 分层寻路 (HPA*)
+// 把损耗图划分为若干簇，每个簇的四条边上各有固定位置的入口，簇内入口之间的代价和相邻簇入口之间的代价构成抽象图
+// 寻路时先在抽象图上找到经过的簇，再只在这些簇内按原分辨率精细寻路
+// 簇内代价在抽象寻路第一次到达该簇时计算；同一块地形上的簇在不同窗口中结果相同，可以跨窗口共享
+// 参考：Botea et al. Near Optimal Hierarchical Path-Finding
+public class HierarchicalPathfinder {
+    public static final int CLUSTER_SIZE = 32;              // 簇边长(格子)
+    private static final int ENTRANCES_PER_BORDER = 3;      // 每条簇边界上的入口数
+    private static final int NODES = 4 * ENTRANCES_PER_BORDER;  // 每个簇的入口数 顺序: x-, x+, z-, z+
+    private static final int OUTSIDE_COST = 1_000_000;      // 精细寻路时所选簇之外的附加损耗
+
+    private final TiledGrid image;
+    private final int[] baseCosts;   // 与具体连接无关的附加损耗
+    private final int rows, cols;
+    private final int clusterRows, clusterCols;
+
+    // 簇内入口之间的代价 [i * NODES + j] 为入口i到入口j 按需计算
+    private final AtomicReferenceArray<float[]> intraCosts;
+    private final IntToLongFunction clusterKey;
+    private final Map<Long, float[]> sharedClusters;
+
+    /**
+     * @param image 高度图
+     * @param baseCosts 与连接无关的附加损耗 按格子编号(x * cols + y)索引
+     * @param clusterKey 簇在整个世界中的标识 返回-1表示该簇的代价不能与其他窗口共享
+     * @param sharedClusters 跨窗口共享的簇内代价
+     */
+    public HierarchicalPathfinder(TiledGrid image, int[] baseCosts, IntToLongFunction clusterKey, Map<Long, float[]> sharedClusters) {
+        this.image = image;
+        this.baseCosts = baseCosts;
+        this.rows = image.rows();
+        this.cols = image.cols();
+        this.clusterRows = (rows + CLUSTER_SIZE - 1) / CLUSTER_SIZE;
+        this.clusterCols = (cols + CLUSTER_SIZE - 1) / CLUSTER_SIZE;
+        this.intraCosts = new AtomicReferenceArray<>(clusterRows * clusterCols);
+        this.clusterKey = clusterKey;
+        this.sharedClusters = sharedClusters;
+    }
+
+    /**
+     * 簇的编号
+     * @param cx 簇的行
+     * @param cz 簇的列
+     */
+    public int clusterIndex(int cx, int cz) {
+        return cx * clusterCols + cz;
+    }
+
+    /**
+     * 分层寻路
+     * @param start 起点格子坐标
+     * @param end 终点格子坐标
+     * @param additionalCosts 本次连接的附加损耗 会被修改
+     * @param options 精细寻路参数
+     * @param landmarks 地标启发函数 可以为null 同时用于抽象图和精细寻路
+     * @return 寻路结果 抽象图上找不到路线时退回整图寻路
+     */
+    public AStarPathfinder.SearchResult search(int[] start, int[] end, int[] additionalCosts, AStarPathfinder.SearchOptions options, LandmarkHeuristic landmarks) {
+        if (start[0] < 0 || start[0] >= rows || start[1] < 0 || start[1] >= cols ||
+                end[0] < 0 || end[0] >= rows || end[1] < 0 || end[1] >= cols) {
+            return AStarPathfinder.SearchResult.EMPTY;
+        }
+
+        int startCell = start[0] * cols + start[1];
+        int endCell = end[0] * cols + end[1];
+        BitSet clusters = new BitSet(clusterRows * clusterCols);
+        clusters.set(clusterOf(startCell));
+        clusters.set(clusterOf(endCell));
+
+        if (clusterOf(startCell) != clusterOf(endCell)) {
+            int[] abstractPath = searchAbstract(startCell, endCell, additionalCosts, landmarks);
+            if (abstractPath == null) {
+                return AStarPathfinder.search(image, start, end, additionalCosts, options, landmarks);
+            }
+            for (int node : abstractPath) {
+                clusters.set(node / NODES);
+            }
+        }
+
+        // 只在经过的簇内精细寻路
+        for (int cluster = 0; cluster < clusterRows * clusterCols; cluster++) {
+            if (clusters.get(cluster))
+                continue;
+            int x0 = (cluster / clusterCols) * CLUSTER_SIZE, x1 = Math.min(rows, x0 + CLUSTER_SIZE);
+            int z0 = (cluster % clusterCols) * CLUSTER_SIZE, z1 = Math.min(cols, z0 + CLUSTER_SIZE);
+            for (int x = x0; x < x1; x++) {
+                for (int z = z0; z < z1; z++) {
+                    additionalCosts[x * cols + z] += OUTSIDE_COST;
+                }
+            }
+        }
+        return AStarPathfinder.search(image, start, end, additionalCosts, options, landmarks);
+    }
+
+    // 在抽象图上寻路 起点和终点临时接入所在簇的入口
+    // 簇内代价只含与连接无关的损耗，从入口走出时再加上本次连接在该入口格子的额外损耗(寻路限制区域)，不选限制区域外的簇
+    private int[] searchAbstract(int startCell, int endCell, int[] additionalCosts, LandmarkHeuristic landmarks) {
+        int nodeCount = clusterRows * clusterCols * NODES;
+        int startNode = nodeCount;
+        int endNode = nodeCount + 1;
+
+        int startCluster = clusterOf(startCell);
+        float[] startCosts = clusterDistances(startCluster, startCell, false, 0);
+        int endCluster = clusterOf(endCell);
+        float[] endCosts = clusterDistances(endCluster, endCell, true, 0);
+
+        int endX = endCell / cols, endZ = endCell % cols;
+        LandmarkHeuristic.Goal goal = landmarks != null ? landmarks.toward(endCell) : null;
+        float[] g = new float[nodeCount + 2];
+        int[] parent = new int[nodeCount + 2];
+        boolean[] closed = new boolean[nodeCount + 2];
+        Arrays.fill(g, Float.POSITIVE_INFINITY);
+        IndexedFloatHeap open = new IndexedFloatHeap();
+        open.ensureCapacity(nodeCount + 2);
+
+        g[startNode] = 0;
+        parent[startNode] = -1;
+        open.push(startNode, 0);
+        while (!open.isEmpty()) {
+            int current = open.poll();
+            if (current == endNode) {
+                List<Integer> path = new ArrayList<>();
+                for (int n = parent[endNode]; n != startNode; n = parent[n]) {
+                    path.add(n);
+                }
+                Collections.reverse(path);
+                return path.stream().mapToInt(Integer::intValue).toArray();
+            }
+            closed[current] = true;
+
+            if (current == startNode) {
+                for (int j = 0; j < NODES; j++) {
+                    relax(startNode, startCluster * NODES + j, startCosts[j], g, parent, closed, open, endX, endZ, goal);
+                }
+                continue;
+            }
+
+            int cluster = current / NODES;
+            int i = current % NODES;
+            int cell = nodeCell(current);
+            float extra = additionalCosts[cell] - baseCosts[cell];
+            // 簇内
+            float[] intra = getIntraCosts(cluster);
+            for (int j = 0; j < NODES; j++) {
+                if (j != i)
+                    relax(current, cluster * NODES + j, intra[i * NODES + j] + extra, g, parent, closed, open, endX, endZ, goal);
+            }
+            // 跨簇
+            int neighbor = crossNode(cluster, i);
+            if (neighbor >= 0) {
+                relax(current, neighbor, stepCost(cell, nodeCell(neighbor)) + extra, g, parent, closed, open, endX, endZ, goal);
+            }
+            // 接入终点
+            if (cluster == endCluster) {
+                relax(current, endNode, endCosts[i] + extra, g, parent, closed, open, endX, endZ, goal);
+            }
+        }
+        return null;
+    }
+
+    private void relax(int from, int to, float cost, float[] g, int[] parent, boolean[] closed, IndexedFloatHeap open,
+                       int endX, int endZ, LandmarkHeuristic.Goal goal) {
+        if (closed[to] || cost == Float.POSITIVE_INFINITY)
+            return;
+        float tentative = g[from] + cost;
+        if (tentative < g[to]) {
+            g[to] = tentative;
+            parent[to] = from;
+            float h = 0;
+            if (to < closed.length - 2) {
+                int cell = nodeCell(to);
+                h = AStarPathfinder.estimate(cell / cols, cell % cols, cell, endX, endZ, goal);
+            }
+            open.push(to, tentative + h);
+        }
+    }
+
+    // 入口所在的格子编号
+    private int nodeCell(int node) {
+        int cluster = node / NODES;
+        int side = node % NODES / ENTRANCES_PER_BORDER;
+        int k = node % ENTRANCES_PER_BORDER;
+        int x0 = (cluster / clusterCols) * CLUSTER_SIZE, x1 = Math.min(rows, x0 + CLUSTER_SIZE);
+        int z0 = (cluster % clusterCols) * CLUSTER_SIZE, z1 = Math.min(cols, z0 + CLUSTER_SIZE);
+        int x = x0 + (2 * k + 1) * (x1 - x0) / (2 * ENTRANCES_PER_BORDER);
+        int z = z0 + (2 * k + 1) * (z1 - z0) / (2 * ENTRANCES_PER_BORDER);
+        return switch (side) {
+            case 0 -> x0 * cols + z;
+            case 1 -> (x1 - 1) * cols + z;
+            case 2 -> x * cols + z0;
+            default -> x * cols + z1 - 1;
+        };
+    }
+
+    // 边界另一侧相邻簇的对应入口 没有相邻簇时返回-1
+    private int crossNode(int cluster, int i) {
+        int cx = cluster / clusterCols;
+        int cz = cluster % clusterCols;
+        int side = i / ENTRANCES_PER_BORDER;
+        int k = i % ENTRANCES_PER_BORDER;
+        return switch (side) {
+            case 0 -> cx > 0 ? clusterIndex(cx - 1, cz) * NODES + ENTRANCES_PER_BORDER + k : -1;
+            case 1 -> cx < clusterRows - 1 ? clusterIndex(cx + 1, cz) * NODES + k : -1;
+            case 2 -> cz > 0 ? clusterIndex(cx, cz - 1) * NODES + 3 * ENTRANCES_PER_BORDER + k : -1;
+            default -> cz < clusterCols - 1 ? clusterIndex(cx, cz + 1) * NODES + 2 * ENTRANCES_PER_BORDER + k : -1;
+        };
+    }
+
+    // 簇内入口之间的代价 第一次用到时计算 并发时可能重复计算但结果相同
+    private float[] getIntraCosts(int cluster) {
+        float[] costs = intraCosts.get(cluster);
+        if (costs != null) {
+            return costs;
+        }
+
+        long key = clusterKey.applyAsLong(cluster);
+        if (key != -1) {
+            costs = sharedClusters.get(key);
+        }
+        if (costs == null) {
+            // 同一条路线反向走时只有起点和终点的附加损耗互换 所以 j→i = i→j - add(i) + add(j)
+            // 每次只需计算到编号更大的入口
+            costs = new float[NODES * NODES];
+            for (int i = 0; i < NODES - 1; i++) {
+                int cellI = nodeCell(cluster * NODES + i);
+                float[] dist = clusterDistances(cluster, cellI, false, i + 1);
+                for (int j = i + 1; j < NODES; j++) {
+                    int cellJ = nodeCell(cluster * NODES + j);
+                    costs[i * NODES + j] = dist[j];
+                    costs[j * NODES + i] = dist[j] - baseCosts[cellI] + baseCosts[cellJ];
+                }
+            }
+            if (key != -1) {
+                sharedClusters.putIfAbsent(key, costs);
+            }
+        }
+        intraCosts.compareAndSet(cluster, null, costs);
+        return intraCosts.get(cluster);
+    }
+
+    /**
+     * 簇内从一个格子出发(或到达一个格子)到簇内各入口的最小代价 所需的入口都确定后提前结束
+     * @param reverse 为true时计算各入口到该格子的代价
+     * @param firstTarget 只需要编号不小于它的入口 其余入口的结果可能不准确
+     */
+    private float[] clusterDistances(int cluster, int cell, boolean reverse, int firstTarget) {
+        int x0 = (cluster / clusterCols) * CLUSTER_SIZE, x1 = Math.min(rows, x0 + CLUSTER_SIZE);
+        int z0 = (cluster % clusterCols) * CLUSTER_SIZE, z1 = Math.min(cols, z0 + CLUSTER_SIZE);
+        int width = z1 - z0;
+        float[] dist = new float[(x1 - x0) * width];
+        boolean[] settled = new boolean[dist.length];
+        Arrays.fill(dist, Float.POSITIVE_INFINITY);
+        IndexedFloatHeap open = new IndexedFloatHeap();
+        open.ensureCapacity(dist.length);
+
+        int[] targets = new int[NODES];
+        boolean[] isTarget = new boolean[dist.length];
+        for (int i = 0; i < NODES; i++) {
+            int t = nodeCell(cluster * NODES + i);
+            targets[i] = (t / cols - x0) * width + (t % cols - z0);
+            if (i >= firstTarget)
+                isTarget[targets[i]] = true;
+        }
+        int remaining = 0;
+        for (boolean b : isTarget) {
+            if (b)
+                remaining++;
+        }
+
+        int source = (cell / cols - x0) * width + (cell % cols - z0);
+        dist[source] = 0;
+        open.push(source, 0);
+        while (!open.isEmpty() && remaining > 0) {
+            int local = open.poll();
+            settled[local] = true;
+            if (isTarget[local])
+                remaining--;
+            int x = x0 + local / width;
+            int z = z0 + local % width;
+            int current = x * cols + z;
+            for (int i = 0; i < DIRECTIONS.length; i++) {
+                int nx = x + DIRECTIONS[i][0];
+                int nz = z + DIRECTIONS[i][1];
+                if (nx < x0 || nx >= x1 || nz < z0 || nz >= z1)
+                    continue;
+                int nLocal = (nx - x0) * width + (nz - z0);
+                if (settled[nLocal])
+                    continue;
+                // 反向时 代价为邻格走到当前格
+                float cost = reverse
+                        ? MOVEMENT_COST[i] + Math.abs(image.get(nx, nz) - image.get(x, z)) + baseCosts[nx * cols + nz]
+                        : MOVEMENT_COST[i] + Math.abs(image.get(x, z) - image.get(nx, nz)) + baseCosts[current];
+                float tentative = dist[local] + cost;
+                if (tentative < dist[nLocal]) {
+                    dist[nLocal] = tentative;
+                    open.push(nLocal, tentative);
+                }
+            }
+        }
+
+        float[] result = new float[NODES];
+        for (int i = 0; i < NODES; i++) {
+            result[i] = dist[targets[i]];
+        }
+        return result;
+    }
+
+    // 相邻两格之间的代价 与AStarPathfinder一致
+    private float stepCost(int from, int to) {
+        int fx = from / cols, fz = from % cols;
+        int tx = to / cols, tz = to % cols;
+        float move = fx != tx && fz != tz ? MOVEMENT_COST[4] : MOVEMENT_COST[0];
+        return move + Math.abs(image.get(fx, fz) - image.get(tx, tz)) + baseCosts[from];
+    }
+
+    private int clusterOf(int cell) {
+        return clusterIndex(cell / cols / CLUSTER_SIZE, cell % cols / CLUSTER_SIZE);
+    }
+}
@@ -0,0 +1,129 @@
+package com.hxzhitang.tongdarailway.util;
+
+import java.util.Arrays;
+
+// 以格子编号为元素的二叉小根堆 支持降低键值 不在搜索过程中分配对象
+public class IndexedFloatHeap {
+    private int[] heap = new int[0];      // 堆中的格子编号
+    private int[] position = new int[0];  // 格子在堆中的位置 不在堆中为-1
+    private float[] keys = new float[0];  // 格子的键值
+    private int size = 0;
+
+    /**
+     * 保证能容纳编号为 0 ~ capacity-1 的格子 扩容会清空堆
+     */
+    public void ensureCapacity(int capacity) {
+        if (position.length >= capacity) {
+            return;
+        }
+        heap = new int[capacity];
+        position = new int[capacity];
+        keys = new float[capacity];
+        Arrays.fill(position, -1);
+        size = 0;
+    }
+
+    public void clear() {
+        for (int i = 0; i < size; i++) {
+            position[heap[i]] = -1;
+        }
+        size = 0;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean contains(int cell) {
+        return position[cell] >= 0;
+    }
+
+    /**
+     * 按堆内顺序取第i个格子 用于遍历堆中的全部格子
+     */
+    public int get(int i) {
+        return heap[i];
+    }
+
+    public float peekKey() {
+        return keys[heap[0]];
+    }
+
+    /**
+     * 插入格子 已在堆中时只在新键值更小时降低键值
+     */
+    public void push(int cell, float key) {
+        int i = position[cell];
+        if (i >= 0) {
+            if (key < keys[cell]) {
+                keys[cell] = key;
+                siftUp(i);
+            }
+            return;
+        }
+        keys[cell] = key;
+        heap[size] = cell;
+        position[cell] = size;
+        siftUp(size++);
+    }
+
+    /**
+     * 取出键值最小的格子
+     */
+    public int poll() {
+        int top = heap[0];
+        position[top] = -1;
+        size--;
+        if (size > 0) {
+            int last = heap[size];
+            heap[0] = last;
+            position[last] = 0;
+            siftDown(0);
+        }
+        return top;
+    }
+
+    private void siftUp(int i) {
+        int cell = heap[i];
+        float key = keys[cell];
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            int p = heap[parent];
+            if (keys[p] <= key) {
+                break;
+            }
+            heap[i] = p;
+            position[p] = i;
+            i = parent;
+        }
+        heap[i] = cell;
+        position[cell] = i;
+    }
+
+    private void siftDown(int i) {
+        int cell = heap[i];
+        float key = keys[cell];
+        int half = size >>> 1;
+        while (i < half) {
+            int child = 2 * i + 1;
+            int c = heap[child];
+            int right = child + 1;
+            if (right < size && keys[heap[right]] < keys[c]) {
+                child = right;
+                c = heap[child];
+            }
+            if (key <= keys[c]) {
+                break;
+            }
+            heap[i] = c;
+            position[c] = i;
+            i = child;
+        }
+        heap[i] = cell;
+        position[cell] = i;
+    }
+}
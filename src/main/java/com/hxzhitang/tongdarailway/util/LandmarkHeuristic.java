@@ -0,0 +1,142 @@
+package com.hxzhitang.tongdarailway.util;
+
+import java.util.Arrays;
+import java.util.concurrent.RecursiveAction;
+
+import static com.hxzhitang.tongdarailway.util.AStarPathfinder.DIRECTIONS;
+import static com.hxzhitang.tongdarailway.util.AStarPathfinder.MOVEMENT_COST;
+
+// ALT启发函数 (A*, Landmarks, Triangle inequality)
+// 预先算出若干地标到每个格子的最小代价，用三角不等式估计任意两格之间代价的下界
+// 地标距离在只含与连接无关的附加损耗的图上计算，实际寻路的附加损耗只会更大，所以估计对所有连接都不会偏大
+// 同一条路线反向走时只有两端的附加损耗互换：d(a,b) = d(b,a) + add(a) - add(b)，每个地标只需一次Dijkstra
+// 参考：Goldberg & Harrelson, Computing the Shortest Path: A* Search Meets Graph Theory
+public class LandmarkHeuristic {
+    private final int count;            // 地标数
+    private final float[] distances;    // [cell * count + l] 地标l到格子的最小代价
+    private final int[] baseCosts;
+
+    private LandmarkHeuristic(int count, float[] distances, int[] baseCosts) {
+        this.count = count;
+        this.distances = distances;
+        this.baseCosts = baseCosts;
+    }
+
+    /**
+     * 计算地标距离 每个地标一次Dijkstra 在规划线程池中并行
+     * @param image 高度图
+     * @param baseCosts 与连接无关的附加损耗 按格子编号(x * cols + y)索引
+     * @param landmarks 地标的格子编号
+     */
+    public static LandmarkHeuristic compute(TiledGrid image, int[] baseCosts, int[] landmarks) {
+        int cells = image.rows() * image.cols();
+        int count = landmarks.length;
+        float[] distances = new float[cells * count];
+        PlannerPool.invoke(new RecursiveAction() {
+            @Override
+            protected void compute() {
+                RecursiveAction[] tasks = new RecursiveAction[count];
+                for (int l = 0; l < count; l++) {
+                    int index = l;
+                    tasks[l] = new RecursiveAction() {
+                        @Override
+                        protected void compute() {
+                            float[] dist = dijkstra(image, baseCosts, landmarks[index]);
+                            for (int cell = 0; cell < cells; cell++) {
+                                distances[cell * count + index] = dist[cell];
+                            }
+                        }
+                    };
+                }
+                invokeAll(tasks);
+            }
+        });
+        return new LandmarkHeuristic(count, distances, baseCosts);
+    }
+
+    /**
+     * 从各格子到终点的代价下界
+     */
+    public Goal toward(int target) {
+        return new Goal(this, target, true);
+    }
+
+    /**
+     * 从起点到各格子的代价下界 用于反向搜索
+     */
+    public Goal from(int source) {
+        return new Goal(this, source, false);
+    }
+
+    // 从地标出发的最小代价 边的代价与寻路一致 附加损耗属于走出的格子
+    private static float[] dijkstra(TiledGrid image, int[] baseCosts, int source) {
+        int rows = image.rows();
+        int cols = image.cols();
+        float[] dist = new float[rows * cols];
+        boolean[] settled = new boolean[rows * cols];
+        Arrays.fill(dist, Float.POSITIVE_INFINITY);
+        IndexedFloatHeap open = new IndexedFloatHeap();
+        open.ensureCapacity(rows * cols);
+
+        dist[source] = 0;
+        open.push(source, 0);
+        while (!open.isEmpty()) {
+            int current = open.poll();
+            settled[current] = true;
+            int x = current / cols;
+            int y = current - x * cols;
+            int height = image.get(x, y);
+            float base = dist[current] + baseCosts[current];
+            for (int i = 0; i < DIRECTIONS.length; i++) {
+                int nx = x + DIRECTIONS[i][0];
+                int ny = y + DIRECTIONS[i][1];
+                if (nx < 0 || nx >= rows || ny < 0 || ny >= cols)
+                    continue;
+                int neighbor = nx * cols + ny;
+                if (settled[neighbor])
+                    continue;
+                float tentative = base + MOVEMENT_COST[i] + Math.abs(height - image.get(nx, ny));
+                if (tentative < dist[neighbor]) {
+                    dist[neighbor] = tentative;
+                    open.push(neighbor, tentative);
+                }
+            }
+        }
+        return dist;
+    }
+
+    // 对某个终点(或起点)的下界估计 预先取出该格子的地标距离
+    public static final class Goal {
+        private final LandmarkHeuristic landmarks;
+        private final float[] goalDistances;
+        private final int goalBase;
+        private final boolean toward;
+
+        private Goal(LandmarkHeuristic landmarks, int goal, boolean toward) {
+            this.landmarks = landmarks;
+            this.goalDistances = Arrays.copyOfRange(landmarks.distances, goal * landmarks.count, (goal + 1) * landmarks.count);
+            this.goalBase = landmarks.baseCosts[goal];
+            this.toward = toward;
+        }
+
+        /**
+         * 代价下界
+         * 到终点t: max(D(t) - D(v), D(v) - D(t) + add(v) - add(t))
+         * 从起点s: max(D(v) - D(s), D(s) - D(v) + add(s) - add(v))
+         */
+        public float estimate(int cell) {
+            int count = landmarks.count;
+            float[] distances = landmarks.distances;
+            int offset = cell * count;
+            int baseDiff = toward ? landmarks.baseCosts[cell] - goalBase : goalBase - landmarks.baseCosts[cell];
+            float best = 0;
+            for (int l = 0; l < count; l++) {
+                float d = distances[offset + l] - goalDistances[l];
+                float bound = toward ? Math.max(-d, d + baseDiff) : Math.max(d, -d + baseDiff);
+                if (bound > best)
+                    best = bound;
+            }
+            return best;
+        }
+    }
+}
@@ -1,65 +1,193 @@
 package com.hxzhitang.tongdarailway.util;
 
+import com.hxzhitang.tongdarailway.Tongdarailway;
 import com.hxzhitang.tongdarailway.railway.RailwayMap;
+import com.hxzhitang.tongdarailway.railway.RailwayMapCodec;
 import com.hxzhitang.tongdarailway.railway.RegionPos;
 import net.minecraft.core.HolderLookup;
 import net.minecraft.nbt.CompoundTag;
 import net.minecraft.nbt.ListTag;
+import net.minecraft.nbt.NbtAccounter;
+import net.minecraft.nbt.NbtIo;
 import net.minecraft.nbt.Tag;
 import net.minecraft.server.level.ServerLevel;
 import net.minecraft.util.datafix.DataFixTypes;
 import net.minecraft.world.level.Level;
 import net.minecraft.world.level.saveddata.SavedData;
 import net.minecraft.world.level.storage.DimensionDataStorage;
+import net.minecraft.world.level.storage.LevelResource;
+import net.neoforged.bus.api.SubscribeEvent;
+import net.neoforged.fml.common.EventBusSubscriber;
+import net.neoforged.neoforge.event.server.ServerStoppedEvent;
 
+import java.io.*;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
+// 铁路存档 每个区域的路线单独存为一个压缩文件(RailwayMapCodec)，保存时只写有改动的区域
+// 区域文件在请求该区域时才读取，读出的路线由调用方缓存；内存中只持有还没写出的区域
+// 放置进度每个区块都会变，单独记录在主存档文件中，区域文件只在规划完成和丢弃路线时写出
+// 主存档文件记录格式版本和放置进度；旧版本把所有区域存在主存档文件中，读取后按区域重新写出
+@EventBusSubscriber(modid = Tongdarailway.MODID)
 public class ModSaveData extends SavedData {
     public static final String NAME = "tongdarailway_mod_railway_data_v1";
-    public final Map<RegionPos, RailwayMap> regionRailways = new ConcurrentHashMap<>();
+    private static final String REGION_FOLDER = "tongdarailway_regions";   // 在世界的data文件夹中
+    private static final int FORMAT = 2;
 
-    public void putRailwayMap(RegionPos regionPos, RailwayMap railwayMap) {
+    // 所有世界共用一个写线程
+    private static final ExecutorService WRITER = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "Tongdarailway Save");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private static CompletableFuture<Void> pendingWrites = CompletableFuture.completedFuture(null);  // 最后提交的写入
+
+    private final Path regionFolder;
+    private final Map<RegionPos, RailwayMap> regionRailways = new ConcurrentHashMap<>();  // 还没写出的区域
+    private final Set<RegionPos> dirtyRegions = ConcurrentHashMap.newKeySet();   // 有改动、下次保存时写出的区域
+    private final Map<RegionPos, long[]> decorationProgress = new ConcurrentHashMap<>();  // 还没丢弃路线的区域的放置进度
+    // 旧版本存档转换 转换出的区域文件全部写出前，保存时仍写回原来的区域列表，中途退出不会丢失区域
+    private final Set<RegionPos> converting = ConcurrentHashMap.newKeySet();
+    private volatile ListTag legacyRailwayData;
+
+    // 待写出的区域 写出失败时把区域路线重新放回
+    private record PendingWrite(RegionPos pos, RailwayMap railwayMap, RailwayMap.Snapshot snapshot) {
+    }
+
+    private ModSaveData(Path regionFolder) {
+        this.regionFolder = regionFolder;
+    }
+
+    /**
+     * 放入新的或有改动的区域路线 下次保存时写出
+     */
+    public synchronized void putRailwayMap(RegionPos regionPos, RailwayMap railwayMap) {
         regionRailways.put(regionPos, railwayMap);
+        dirtyRegions.add(regionPos);
         setDirty();
     }
 
-    public RailwayMap getRailwayMap(RegionPos regionPos) {
+    /**
+     * 记录区域的放置进度 只随主存档文件保存，不重写区域文件
+     * 与已记录的进度按位合并 多个线程先后放入时，后到的旧进度不会覆盖新的
+     */
+    public void putDecorationProgress(RegionPos regionPos, long[] decorated) {
+        decorationProgress.merge(regionPos, decorated, ModSaveData::union);
         setDirty();
-        return regionRailways.get(regionPos);
     }
 
-    public static ModSaveData create() {
-        return new ModSaveData();
+    // 返回新数组 保存时可能正在读取旧数组
+    private static long[] union(long[] a, long[] b) {
+        long[] result = Arrays.copyOf(a, Math.max(a.length, b.length));
+        for (int i = 0; i < b.length; i++) {
+            result[i] |= b[i];
+        }
+        return result;
+    }
+
+    /**
+     * 取区域路线 已写出的区域每次都从区域文件读取，由调用方缓存
+     * @return 区域路线 未保存过时返回null
+     */
+    public RailwayMap getRailwayMap(RegionPos regionPos) {
+        RailwayMap railwayMap = regionRailways.get(regionPos);
+        if (railwayMap != null)
+            return railwayMap;
+        return readRegion(regionPos);
+    }
+
+    /**
+     * 区域路线是否已保存过 不读取区域文件
+     */
+    public boolean hasRailwayMap(RegionPos regionPos) {
+        return regionRailways.containsKey(regionPos) || Files.isRegularFile(regionFile(regionPos));
+    }
+
+    public static ModSaveData create(Path regionFolder) {
+        return new ModSaveData(regionFolder);
     }
 
+    // 主线程只在各区域的锁内取出快照 序列化、压缩和写文件都在写线程中进行，不持有区域的锁
     @Override
     public CompoundTag save(CompoundTag pCompoundTag, HolderLookup.Provider provider) {
-        ListTag listTag = new ListTag();
-        regionRailways.forEach((pos, railwayMap) -> {
-            CompoundTag compoundTag = new CompoundTag();
-            compoundTag.put("RegionPos", pos.toNBT());
-            compoundTag.put("RailwayMap", railwayMap.toNBT());
-            listTag.add(compoundTag);
+        List<PendingWrite> writes = new ArrayList<>();
+        for (RegionPos pos : List.copyOf(dirtyRegions)) {
+            // 先移出再写 写的过程中又有改动会重新加入
+            dirtyRegions.remove(pos);
+            RailwayMap railwayMap = regionRailways.get(pos);
+            if (railwayMap != null)
+                writes.add(new PendingWrite(pos, railwayMap, railwayMap.snapshot()));
+        }
+        if (!writes.isEmpty())
+            submitWrite(() -> writes.forEach(this::writeRegion));
+        pCompoundTag.putInt("Format", FORMAT);
+        ListTag progressTag = new ListTag();
+        decorationProgress.forEach((pos, decorated) -> {
+            CompoundTag tag = new CompoundTag();
+            tag.put("RegionPos", pos.toNBT());
+            tag.putLongArray("DecoratedChunks", decorated);
+            progressTag.add(tag);
         });
-        pCompoundTag.put("RailwayData", listTag);
+        pCompoundTag.put("DecorationProgress", progressTag);
+        ListTag legacy = legacyRailwayData;
+        if (legacy != null)
+            pCompoundTag.put("RailwayData", legacy);
         return pCompoundTag;
     }
 
-    public static ModSaveData load(CompoundTag nbt, HolderLookup.Provider provider) {
-        ModSaveData data = ModSaveData.create();
+    /**
+     * 等待已提交的区域文件全部写完
+     */
+    public static void flush() {
+        CompletableFuture<Void> pending;
+        synchronized (ModSaveData.class) {
+            pending = pendingWrites;
+        }
+        pending.exceptionally(e -> null).join();
+    }
+
+    @SubscribeEvent
+    static void onServerStopped(ServerStoppedEvent event) {
+        // 最后一次保存提交的写入完成后才退出
+        flush();
+    }
+
+    public static ModSaveData load(Path regionFolder, CompoundTag nbt, HolderLookup.Provider provider) {
+        ModSaveData data = ModSaveData.create(regionFolder);
+        int format = nbt.getInt("Format");
+        if (format > FORMAT)
+            Tongdarailway.LOGGER.warn("Railway data was saved by a newer version (format {}, supported {}), some regions may fail to load", format, FORMAT);
+        // 旧版本的存档 所有区域都在主存档文件中
         ListTag listNBT = (ListTag) nbt.get("RailwayData");
         if (listNBT != null) {
             for (Tag value : listNBT) {
                 CompoundTag tag = (CompoundTag) value;
                 RegionPos regionPos = RegionPos.fromNBT((ListTag) tag.get("RegionPos"));
                 CompoundTag dataTag = (CompoundTag) tag.get("RailwayMap");
-                RailwayMap railwayMap;
-                if (dataTag != null) {
-                    railwayMap = RailwayMap.fromNBT(dataTag);
-                    data.regionRailways.put(regionPos, railwayMap);
+                if (dataTag != null && data.getRailwayMap(regionPos) == null) {
+                    data.putRailwayMap(regionPos, RailwayMap.fromNBT(dataTag));
+                    data.converting.add(regionPos);
                 }
             }
+            if (!data.converting.isEmpty()) {
+                data.legacyRailwayData = listNBT;
+                Tongdarailway.LOGGER.info("Converting {} railway regions to per-region files", data.converting.size());
+            }
+        }
+        for (Tag value : nbt.getList("DecorationProgress", Tag.TAG_COMPOUND)) {
+            CompoundTag tag = (CompoundTag) value;
+            data.decorationProgress.put(RegionPos.fromNBT((ListTag) tag.get("RegionPos")), tag.getLongArray("DecoratedChunks"));
         }
 
         return data;
@@ -70,7 +198,88 @@ public class ModSaveData extends SavedData {
             throw new RuntimeException("Attempted to get the data from a client world. This is wrong.");
         }
         ServerLevel world = worldIn.getServer().getLevel(ServerLevel.OVERWORLD);
+        Path regionFolder = worldIn.getServer().getWorldPath(LevelResource.ROOT).resolve("data").resolve(REGION_FOLDER);
         DimensionDataStorage dataStorage = world.getDataStorage();
-        return dataStorage.computeIfAbsent(new Factory<ModSaveData>(ModSaveData::create, ModSaveData::load, DataFixTypes.LEVEL), ModSaveData.NAME);
+        return dataStorage.computeIfAbsent(new Factory<ModSaveData>(() -> ModSaveData.create(regionFolder),
+                (nbt, provider) -> ModSaveData.load(regionFolder, nbt, provider), DataFixTypes.LEVEL), ModSaveData.NAME);
+    }
+
+    private Path regionFile(RegionPos pos) {
+        return regionFolder.resolve("r." + pos.x() + "." + pos.z() + ".dat");
+    }
+
+    // 写出的顺序与提交的顺序一致 同一区域后提交的不会被先提交的覆盖
+    private static synchronized void submitWrite(Runnable write) {
+        // 前一批写入出错也不影响后面的写入
+        pendingWrites = pendingWrites.exceptionally(e -> null).thenRunAsync(write, WRITER);
+    }
+
+    // 在写线程中调用 先写临时文件再替换，写到一半中断不会损坏已有的区域文件
+    private void writeRegion(PendingWrite write) {
+        RegionPos pos = write.pos();
+        Path file = regionFile(pos);
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try {
+            Files.createDirectories(regionFolder);
+            try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(temp))) {
+                RailwayMapCodec.write(write.snapshot(), out);
+            }
+            try {
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException | RuntimeException e) {
+            Tongdarailway.LOGGER.error("Failed to save railway region {}: ", pos, e);
+            putRailwayMap(pos, write.railwayMap());
+            return;
+        }
+        // 转换出的区域文件全部写出后 主存档文件不再写回旧的区域列表
+        if (converting.remove(pos) && converting.isEmpty()) {
+            legacyRailwayData = null;
+            setDirty();
+        }
+        // 已丢弃路线的区域文件写出后 不再需要单独记录放置进度
+        if (write.snapshot().compacted() && decorationProgress.remove(pos) != null)
+            setDirty();
+        // 已写出且期间没有新的改动 不再持有
+        synchronized (this) {
+            if (!dirtyRegions.contains(pos))
+                regionRailways.remove(pos, write.railwayMap());
+        }
+    }
+
+    // 读取区域文件并合并放置进度 文件不存在或读取失败时返回null
+    private RailwayMap readRegion(RegionPos pos) {
+        Path file = regionFile(pos);
+        if (!Files.isRegularFile(file))
+            return null;
+        RailwayMap railwayMap;
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(file))) {
+            in.mark(4);
+            byte[] header = in.readNBytes(4);
+            in.reset();
+            if (RailwayMapCodec.isBinary(header)) {
+                railwayMap = RailwayMapCodec.read(in);
+            } else {
+                // 之前版本写出的压缩NBT区域文件
+                railwayMap = RailwayMap.fromNBT(NbtIo.readCompressed(in, NbtAccounter.unlimitedHeap()));
+            }
+        } catch (IOException | RuntimeException e) {
+            Tongdarailway.LOGGER.error("Failed to read railway region {}: ", pos, e);
+            return null;
+        }
+        long[] progress = decorationProgress.get(pos);
+        if (progress != null) {
+            if (railwayMap.mergeDecorated(progress)) {
+                // 丢弃路线后还没来得及写出区域文件
+                putRailwayMap(pos, railwayMap);
+            } else if (railwayMap.decorationProgress() == null) {
+                // 区域文件已丢弃路线 进度没来得及从主存档文件中移除
+                decorationProgress.remove(pos);
+                setDirty();
+            }
+        }
+        return railwayMap;
     }
 }
@@ -8,18 +8,18 @@ import java.util.Random;
 public class MyRandom {
     
     /**
-     * [0, range]Χһ಻Сrange/3xz
+     * 在[0, range]范围内随机生成一个或两个相距不小于range/3的xz坐标点
      *
-     * @param seed  
-     * @param range 귶Χ
-     * @return xzint飬ÿԪرʾ(x, z)
+     * @param seed  随机数种子
+     * @param range 坐标范围
+     * @return 包含xz坐标点的int数组，每个点用连续两个元素表示(x, z)
      */
     public static int[] generatePoints(long seed, int range) {
         Random random = new Random(seed);
 
         int quart = range / 4;
 
-        // һ
+        // 先生成一个点
         int x1 = random.nextInt(quart, range - quart);
         int z1 = random.nextInt(quart, range - quart);
 
@@ -27,12 +27,12 @@ public class MyRandom {
     }
 
     /**
-     * ӴMapѡһֵ
-     * @param map Map
-     * @param seed 
-     * @param <K> 
-     * @param <V> ֵ
-     * @return ѡֵMapΪ򷵻null
+     * 根据种子从Map中随机选择一个值
+     * @param map 输入的Map集合
+     * @param seed 随机种子
+     * @param <K> 键的类型
+     * @param <V> 值的类型
+     * @return 随机选择的值，如果Map为空则返回null
      */
     public static <K, V> V getRandomValueFromMap(Map<K, V> map, long seed) {
         if (map == null || map.isEmpty()) {
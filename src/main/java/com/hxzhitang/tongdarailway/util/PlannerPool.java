@@ -0,0 +1,99 @@
+package com.hxzhitang.tongdarailway.util;
+
+import com.hxzhitang.tongdarailway.Config;
+import com.hxzhitang.tongdarailway.Tongdarailway;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+// 全模组共享的规划计算线程池 所有路线规划的并行计算都提交到这里
+// 线程数固定为plannerThreads：池内任务只在分治的子任务上join，不等待其他阶段的future，等待时也不补充线程
+public class PlannerPool {
+    private static final int SPARE_THREADS = 1;   // 分治任务join时最多补充的线程数
+    private static volatile ForkJoinPool pool;
+
+    // 统计信息
+    private static final LongAdder submittedTasks = new LongAdder();
+    private static final LongAdder invokedTasks = new LongAdder();
+    private static final LongAdder failedTasks = new LongAdder();
+    private static final AtomicInteger threadCount = new AtomicInteger();
+
+    private PlannerPool() {
+    }
+
+    public static ForkJoinPool get() {
+        ForkJoinPool p = pool;
+        if (p == null) {
+            synchronized (PlannerPool.class) {
+                p = pool;
+                if (p == null) {
+                    int parallelism = getParallelism();
+                    // 补充的线程已满时不抛出异常，由join的线程自己执行或等待
+                    p = new ForkJoinPool(parallelism, PlannerThread::new, (t, e) -> {
+                        failedTasks.increment();
+                        Tongdarailway.LOGGER.error("Railway planner thread {} failed: ", t.getName(), e);
+                    }, false, 0, parallelism + SPARE_THREADS, 1, saturated -> true, 60, TimeUnit.SECONDS);
+                    pool = p;
+                    Tongdarailway.LOGGER.info("Railway planner pool started with {} threads", parallelism);
+                }
+            }
+        }
+        return p;
+    }
+
+    /**
+     * 在线程池中执行任务并等待结果
+     * 如果当前线程已是池内线程，直接在本线程内分治执行
+     */
+    public static <T> T invoke(ForkJoinTask<T> task) {
+        invokedTasks.increment();
+        if (ForkJoinTask.inForkJoinPool() && ForkJoinTask.getPool() == pool) {
+            return task.invoke();
+        }
+        return get().invoke(task);
+    }
+
+    /**
+     * 异步提交任务
+     */
+    public static ForkJoinTask<?> submit(Runnable task) {
+        submittedTasks.increment();
+        return get().submit(task);
+    }
+
+    public static String getStatistics() {
+        ForkJoinPool p = pool;
+        if (p == null) {
+            return "Planner pool not started";
+        }
+        return String.format("Planner pool: parallelism=%d, active=%d, running=%d, queued=%d, steals=%d, submitted=%d, invoked=%d, failed=%d",
+                p.getParallelism(), p.getActiveThreadCount(), p.getRunningThreadCount(), p.getQueuedTaskCount(),
+                p.getStealCount(), submittedTasks.sum(), invokedTasks.sum(), failedTasks.sum());
+    }
+
+    public static void logStatistics() {
+        Tongdarailway.LOGGER.debug(getStatistics());
+    }
+
+    private static int getParallelism() {
+        if (Config.plannerThreads > 0) {
+            return Config.plannerThreads;
+        }
+        // 留一个核心给服务器主线程
+        return Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+    }
+
+    private static class PlannerThread extends ForkJoinWorkerThread {
+        PlannerThread(ForkJoinPool pool) {
+            super(pool);
+            // 构造时线程还未注册到池中 getPoolIndex()总是0
+            setName("TongDaRailway-Planner-" + threadCount.getAndIncrement());
+            // 模组类加载器 避免池内线程找不到模组类
+            setContextClassLoader(PlannerPool.class.getClassLoader());
+        }
+    }
+}
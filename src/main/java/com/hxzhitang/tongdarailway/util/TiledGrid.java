@@ -0,0 +1,183 @@
+package com.hxzhitang.tongdarailway.util;
+
+// 由若干同样大小的图块拼成的只读网格 不复制图块数据
+// 图块按行优先展平为一维数组，每个图块的值加上该图块的基准值，缺失的图块读出固定值
+// 坐标到图块和图块内下标的换算预先按行、列查表，读取时不做除法
+public abstract class TiledGrid {
+    public static final int MISSING = 50000;   // 缺失图块的值
+
+    protected final int rows, cols;
+    protected final int[] tileBase;      // 每个图块的基准值 缺失的图块为MISSING
+    protected final int[] tileOfRow;     // x -> tileX * tilesZ
+    protected final int[] offsetOfRow;   // x -> (x % tileRows) * tileCols
+    protected final int[] tileOfCol;     // z -> tileZ
+    protected final int[] offsetOfCol;   // z -> z % tileCols
+
+    private TiledGrid(int tileRows, int tileCols, int tilesX, int tilesZ, Object[] tiles, int base) {
+        this.rows = tileRows * tilesX;
+        this.cols = tileCols * tilesZ;
+        tileBase = new int[tiles.length];
+        for (int i = 0; i < tiles.length; i++) {
+            tileBase[i] = tiles[i] == null ? MISSING : base;
+        }
+
+        tileOfRow = new int[rows];
+        offsetOfRow = new int[rows];
+        for (int x = 0; x < rows; x++) {
+            tileOfRow[x] = (x / tileRows) * tilesZ;
+            offsetOfRow[x] = (x % tileRows) * tileCols;
+        }
+        tileOfCol = new int[cols];
+        offsetOfCol = new int[cols];
+        for (int z = 0; z < cols; z++) {
+            tileOfCol[z] = z / tileCols;
+            offsetOfCol[z] = z % tileCols;
+        }
+    }
+
+    /**
+     * 高度网格 图块存储相对基准高度的short
+     * @param tiles 图块 [tileX * tilesZ + tileZ]，每个按 x * tileSize + z 展平，为null表示缺失
+     * @param base 基准高度 一般为世界最低建筑高度
+     */
+    public static TiledGrid ofShorts(int tileSize, int tilesX, int tilesZ, short[][] tiles, int base) {
+        return new ShortGrid(tileSize, tileSize, tilesX, tilesZ, tiles, base);
+    }
+
+    /**
+     * 位图网格 置位的格子读出value，其余为0
+     * @param tiles 图块 [tileX * tilesZ + tileZ]，第 x * tileSize + z 位对应格子，为null表示缺失
+     */
+    public static TiledGrid ofBits(int tileSize, int tilesX, int tilesZ, long[][] tiles, int value) {
+        return new BitGrid(tileSize, tilesX, tilesZ, tiles, value);
+    }
+
+    /**
+     * 只有一个图块的网格
+     * @param flat 按 x * cols + z 展平的数据 不复制
+     */
+    public static TiledGrid single(int rows, int cols, int[] flat) {
+        return new IntGrid(rows, cols, flat);
+    }
+
+    /**
+     * 按格子数计算位图图块的长度
+     */
+    public static long[] newBitTile(int tileSize) {
+        return new long[(tileSize * tileSize + 63) >>> 6];
+    }
+
+    public abstract int get(int x, int z);
+
+    /**
+     * 估算占用的内存 包括引用的图块 同一图块只计一次
+     */
+    public abstract long estimateBytes();
+
+    // 坐标查找表
+    protected long tableBytes() {
+        return 64 + 8L * (rows + cols) * 2 + 4L * tileBase.length;
+    }
+
+    public int rows() {
+        return rows;
+    }
+
+    public int cols() {
+        return cols;
+    }
+
+    private static final class ShortGrid extends TiledGrid {
+        private final short[][] tiles;
+
+        ShortGrid(int tileRows, int tileCols, int tilesX, int tilesZ, short[][] tiles, int base) {
+            super(tileRows, tileCols, tilesX, tilesZ, tiles, base);
+            // 缺失的图块用全0图块 读出的就是基准值MISSING
+            short[] empty = null;
+            this.tiles = new short[tiles.length][];
+            for (int i = 0; i < tiles.length; i++) {
+                if (tiles[i] == null && empty == null)
+                    empty = new short[tileRows * tileCols];
+                this.tiles[i] = tiles[i] != null ? tiles[i] : empty;
+            }
+        }
+
+        @Override
+        public int get(int x, int z) {
+            int tile = tileOfRow[x] + tileOfCol[z];
+            return tiles[tile][offsetOfRow[x] + offsetOfCol[z]] + tileBase[tile];
+        }
+
+        @Override
+        public long estimateBytes() {
+            long bytes = tableBytes();
+            for (int i = 0; i < tiles.length; i++) {
+                if (isFirst(tiles, i))
+                    bytes += 16 + tiles[i].length * 2L;
+            }
+            return bytes;
+        }
+    }
+
+    private static final class BitGrid extends TiledGrid {
+        private final long[][] tiles;
+        private final int value;
+
+        BitGrid(int tileSize, int tilesX, int tilesZ, long[][] tiles, int value) {
+            super(tileSize, tileSize, tilesX, tilesZ, tiles, 0);
+            this.value = value;
+            long[] empty = null;
+            this.tiles = new long[tiles.length][];
+            for (int i = 0; i < tiles.length; i++) {
+                if (tiles[i] == null && empty == null)
+                    empty = newBitTile(tileSize);
+                this.tiles[i] = tiles[i] != null ? tiles[i] : empty;
+            }
+        }
+
+        @Override
+        public int get(int x, int z) {
+            int tile = tileOfRow[x] + tileOfCol[z];
+            int bit = offsetOfRow[x] + offsetOfCol[z];
+            return ((tiles[tile][bit >>> 6] >>> bit) & 1L) != 0 ? value + tileBase[tile] : tileBase[tile];
+        }
+
+        @Override
+        public long estimateBytes() {
+            long bytes = tableBytes();
+            for (int i = 0; i < tiles.length; i++) {
+                if (isFirst(tiles, i))
+                    bytes += 16 + tiles[i].length * 8L;
+            }
+            return bytes;
+        }
+    }
+
+    private static final class IntGrid extends TiledGrid {
+        private final int[] values;
+
+        IntGrid(int rows, int cols, int[] values) {
+            super(rows, cols, 1, 1, new Object[] {values}, 0);
+            this.values = values;
+        }
+
+        @Override
+        public int get(int x, int z) {
+            return values[offsetOfRow[x] + offsetOfCol[z]];
+        }
+
+        @Override
+        public long estimateBytes() {
+            return tableBytes() + 16 + values.length * 4L;
+        }
+    }
+
+    // 缺失的图块共用同一个空图块 只在第一次出现时计算
+    private static boolean isFirst(Object[] tiles, int index) {
+        for (int i = 0; i < index; i++) {
+            if (tiles[i] == tiles[index])
+                return false;
+        }
+        return true;
+    }
+}
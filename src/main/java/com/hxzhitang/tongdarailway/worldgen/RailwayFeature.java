@@ -50,18 +50,20 @@ public class RailwayFeature extends Feature<RailwayFeatureConfig> {
         RailwayBuilder builder = RailwayBuilder.getInstance(ctx.level().getSeed());
         if (builder == null) return false;
 
-        RailwayMap railwayMap = builder.regionRailways.get(regionPos);
+        RailwayMap railwayMap = builder.getRailway(regionPos);
         if (railwayMap == null) return false;
 
-        // ··
-        if (builder.regionRailways.containsKey(regionPos)) {
-            if (railwayMap.routeMap.containsKey(cPos)) {
-                placeRoadbed(railwayMap, cPos, chunk, world);
-            }
+        long chunkKey = cPos.toLong();
+        List<TrackPutInfo> chunkTracks = railwayMap.getTracks(chunkKey);
+
+        // 根据路线生成路基
+        List<CurveRoute> chunkRoutes = railwayMap.getRoutes(chunkKey);
+        if (!chunkRoutes.isEmpty()) {
+            placeRoadbed(chunkRoutes, cPos, chunk, world);
         }
 
-        // óվ
-        for (StationPlanner.StationGenInfo stationPlace : railwayMap.stations) {
+        // 放置车站
+        for (StationPlanner.StationGenInfo stationPlace : railwayMap.getStations()) {
             var station = stationPlace.stationTemplate();
             if (station == null) continue;
             var pos = stationPlace.placePos();
@@ -72,30 +74,27 @@ public class RailwayFeature extends Feature<RailwayFeatureConfig> {
             }
         }
 
-        // ˢ
-        // ҲеȻʱãֻ޴ķ
+        // 放置铁轨刷怪笼
+        // 也许机械动力铁轨天然厌恶生成时放置，我只能用这种愚蠢的方法了
         if (Config.useTrackSpawnerPlaceTrack && Config.generateTrackSpawner) {
-                if (builder.regionRailways.containsKey(regionPos)) {
-                    if (railwayMap.trackMap.containsKey(cPos)) {
-                        var firstInfo = railwayMap.trackMap.get(cPos).getFirst();
-                        BlockPos checkPos = firstInfo.pos().offset(0, -1, 0);
-                        if (!world.getBlockState(checkPos).is(ModBlocks.TRACK_SPAWNER.get())) {
-                            world.setBlock(checkPos, ModBlocks.TRACK_SPAWNER.get().defaultBlockState(), 3);
-                        }
-                        if (world.getBlockEntity(checkPos) instanceof TrackSpawnerBlockEntity trackSpawner) {
-                            trackSpawner.addTrackPutInfo(railwayMap.trackMap.get(cPos));
-                        }
+                if (!chunkTracks.isEmpty()) {
+                    var firstInfo = chunkTracks.getFirst();
+                    BlockPos checkPos = firstInfo.pos().offset(0, -1, 0);
+                    if (!world.getBlockState(checkPos).is(ModBlocks.TRACK_SPAWNER.get())) {
+                        world.setBlock(checkPos, ModBlocks.TRACK_SPAWNER.get().defaultBlockState(), 3);
+                    }
+                    if (world.getBlockEntity(checkPos) instanceof TrackSpawnerBlockEntity trackSpawner) {
+                        trackSpawner.addTrackPutInfo(chunkTracks);
                     }
                 }
         }
         if (!Config.useTrackSpawnerPlaceTrack) {
-            // ۾˵ܲܰļĳUTF-8IDEAһ򿪾
-            // ǸƺҵIDEAһʼGBK :-( ȷʵٸ
+            // 咱就是说，能不能把文件编码改成UTF-8？IDEA一打开就是乱码
+            // 抱歉，似乎我的IDEA一开始就是GBK编码 :-( 确实不想再改了
 
-            // 
-            if (builder.regionRailways.containsKey(regionPos) && railwayMap.trackMap.containsKey(cPos)) {
-                List<TrackPutInfo> tracks = railwayMap.trackMap.get(cPos);
-                tracks.forEach(track -> {
+            // 放置铁轨
+            if (!chunkTracks.isEmpty()) {
+                chunkTracks.forEach(track -> {
                     if (track.bezier() != null) {
                         if (Math.abs(track.bezier().endOffset().y) > 15){
                             Tongdarailway.LOGGER.warn("Railway track height offset is too large. Generation Failed at" + track.pos().toString());
@@ -103,14 +102,18 @@ public class RailwayFeature extends Feature<RailwayFeatureConfig> {
                         }
                         placeCurveTrack(world, track);
                     } else {
-                        if (!world.getBlockState(track.pos()).is(AllBlocks.TRACK)) {
-                            world.setBlock(track.pos(), AllBlocks.TRACK.getDefaultState().setValue(TrackBlock.SHAPE, track.shape()), 3);
+                        for (int i = 0; i < track.length(); i++) {
+                            BlockPos pos = track.blockAt(i);
+                            if (!world.getBlockState(pos).is(AllBlocks.TRACK)) {
+                                world.setBlock(pos, AllBlocks.TRACK.getDefaultState().setValue(TrackBlock.SHAPE, track.shape()), 3);
+                            }
                         }
                     }
                 });
             }
         }
 
+        builder.markChunkDecorated(railwayMap, cPos);
         return true;
     }
 
@@ -125,8 +128,8 @@ public class RailwayFeature extends Feature<RailwayFeatureConfig> {
         Vec3 start1 = track.bezier().start().add(getStartVec(track.bezier().startAxis()));
         Vec3 start2 = track.bezier().start().add(track.bezier().endOffset()).add(getStartVec(track.bezier().endAxis()));
 
-        Vec3 axis1 = track.bezier().startAxis();  // X
-        Vec3 axis2 = track.bezier().endAxis();  // Z
+        Vec3 axis1 = track.bezier().startAxis();  // X轴正方向
+        Vec3 axis2 = track.bezier().endAxis();  // Z轴正方向
 
         Vec3 normal1 = new Vec3(0, 1, 0);
         Vec3 normal2 = new Vec3(0, 1, 0);
@@ -161,7 +164,7 @@ public class RailwayFeature extends Feature<RailwayFeatureConfig> {
                     var p = new Vec3(cPos.x*16+x, y, cPos.z*16+z).add(-0.5, -0.5, -0.5);
                     var blockState = station.getBlockState(p.subtract(center));
                     if (blockState == null) {
-                        // ӦԻеͼnbtļ
+                        // 应对机械动力蓝图保存的nbt文件不包含空气
                         if (station.isInVoxel(p.subtract(center))) {
                             blockState = Blocks.AIR.defaultBlockState();
                         } else {
@@ -196,8 +199,7 @@ public class RailwayFeature extends Feature<RailwayFeatureConfig> {
         return new Vec3(offX, 0, offZ);
     }
 
-    private static void placeRoadbed(RailwayMap railwayMap, ChunkPos cPos, ChunkAccess chunk, WorldGenLevel world) {
-        var routes = railwayMap.routeMap.get(cPos);
+    private static void placeRoadbed(List<CurveRoute> routes, ChunkPos cPos, ChunkAccess chunk, WorldGenLevel world) {
         for (CurveRoute route : routes) {
             int seed = route.getSegments().size();
             RailwayTemplate ground = ModStructureManager.getRandomGround(seed);
@@ -206,7 +208,7 @@ public class RailwayFeature extends Feature<RailwayFeatureConfig> {
 
             for (int x = 0; x < 16; x++) {
                 for (int z = 0; z < 16; z++) {
-                    // ȡһϵ
+                    // 获取一个线上点
                     var testPoint0 = new Vec3(cPos.x*16+x, 80, cPos.z*16+z);
                     CurveRoute.Frame frame = route.getFrame(testPoint0);
 
@@ -218,14 +220,14 @@ public class RailwayFeature extends Feature<RailwayFeatureConfig> {
 
                     Vec3 vec0 = testPoint0.subtract(nearest0);
 
-                    // ϸ߶Ⱥʵʸ߶жӦ
+                    // 根据曲线上高度和实际高度判断应用桥隧
                     BlockPos nearestPos = new BlockPos((int) nearest0.x, (int) nearest0.y, (int) nearest0.z);
                     int h = world.getHeight(Heightmap.Types.OCEAN_FLOOR_WG, nearestPos.getX(), nearestPos.getZ());
 
                     boolean conditionBridge = nearest0.y > h + 10;
                     boolean conditionTunnel = nearest0.y < h - 9;
 
-                    // ȡһ·ʹ·߶Ϊѡ
+                    // 随机获取一个路基，使用路线段数作为种子来选择
                     RailwayTemplate structureTemplate;
                     if (conditionBridge) {
                         structureTemplate = bridge;
@@ -250,14 +252,14 @@ public class RailwayFeature extends Feature<RailwayFeatureConfig> {
                         double localY = vec.dot(normal0) - 0.15;
                         double localZ = vec.dot(binormal0);
 
-                        // ݱ,ģṹҵӦ,ҷ
+                        // 根据标架下坐标,从模板结构找到对应方块,并且放置
                         BlockState blockState = structureTemplate.getBlockState(localX, localY, localZ);
                         if (blockState != null) {
                             BlockPos blockPos = new BlockPos(x, y, z);
                             chunk.setBlockState(blockPos, blockState, true);
                         }
                     }
-                    // ػֱ֧ŷ(ػ)
+                    // 向下填充地基直到遇到支撑方块(隧道不考虑向下填充地基)
                     if (conditionTunnel)
                         continue;
 